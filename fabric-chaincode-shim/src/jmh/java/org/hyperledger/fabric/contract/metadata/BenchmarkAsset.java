@@ -0,0 +1,24 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.contract.metadata;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+@DataType
+public final class BenchmarkAsset {
+    @Property
+    private String id;
+
+    @Property(schema = {"minimum", "0"})
+    private int value;
+
+    @Property
+    private String owner;
+
+    @Property
+    private String[] tags;
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.contract.metadata;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.contract.routing.impl.DataTypeDefinitionImpl;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of validating a complex argument, either loading the schema each time
+ * (as was done originally) or using the compiled schema held by the TypeSchema.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TypeSchemaBenchmark {
+
+    private TypeSchema schema;
+    private JSONObject json;
+
+    @Setup
+    public void setup() {
+        MetadataBuilder.addComponent(new DataTypeDefinitionImpl(BenchmarkAsset.class));
+
+        final TypeSchema paramSchema = new TypeSchema();
+        paramSchema.put("name", "asset");
+        paramSchema.put("schema", TypeSchema.typeConvert(BenchmarkAsset.class));
+        schema = paramSchema;
+
+        json = new JSONObject("{\"id\":\"asset1\",\"value\":42,\"owner\":\"alice\",\"tags\":[\"red\",\"large\"]}");
+    }
+
+    @Benchmark
+    public void loadAndValidate() {
+        final JSONObject toValidate = new JSONObject();
+        toValidate.put("prop", json);
+        schema.loadSchema().validate(toValidate);
+    }
+
+    @Benchmark
+    public void validate() {
+        schema.validate(json);
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.contract.routing;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.contract.ContractInterface;
+import org.hyperledger.fabric.contract.annotation.Contract;
+import org.hyperledger.fabric.contract.annotation.Transaction;
+
+@Contract(name = "benchmark")
+public final class BenchmarkContract implements ContractInterface {
+
+    @Transaction
+    public int none(final Context ctx) {
+        return 0;
+    }
+
+    @Transaction
+    public int three(final Context ctx, final int a, final String b, final long c) {
+        return a + b.length() + (int) c;
+    }
+
+    @Transaction
+    // checkstyle:ignore-next-line:ParameterNumber
+    public int eight(final Context ctx, final int a, final String b, final long c, final int d, final String e, final long f, final int g,
+            final String h) {
+        return a + b.length() + (int) c + d + e.length() + (int) f + g + h.length();
+    }
+}
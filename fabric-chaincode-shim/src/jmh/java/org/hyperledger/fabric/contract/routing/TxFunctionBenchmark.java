@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.contract.routing;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.contract.ContractInterface;
+import org.hyperledger.fabric.contract.routing.impl.ContractDefinitionImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of dispatching to a transaction function, comparing Method.invoke with
+ * the arguments gathered in a list (as was done originally) and the method
+ * handle held by the routing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TxFunctionBenchmark {
+
+    @Param({"0", "3", "8"})
+    private int parameters;
+
+    private final ContractInterface contract = new BenchmarkContract();
+    // the benchmark contract never looks at its context
+    private final Context ctx = null;
+    private TxFunction.Routing routing;
+    private List<Object> convertedArgs;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        final ContractDefinition cd = new ContractDefinitionImpl(BenchmarkContract.class);
+        final Method method;
+        switch (parameters) {
+        case 0:
+            method = BenchmarkContract.class.getMethod("none", Context.class);
+            convertedArgs = new ArrayList<>();
+            break;
+        case 3:
+            method = BenchmarkContract.class.getMethod("three", Context.class, int.class, String.class, long.class);
+            convertedArgs = Arrays.asList(1, "two", 3L);
+            break;
+        default:
+            method = BenchmarkContract.class.getMethod("eight", Context.class, int.class, String.class, long.class, int.class, String.class,
+                    long.class, int.class, String.class);
+            convertedArgs = Arrays.asList(1, "two", 3L, 4, "five", 6L, 7, "eight");
+            break;
+        }
+        routing = cd.addTxFunction(method).getRouting();
+    }
+
+    @Benchmark
+    public Object reflective() throws ReflectiveOperationException {
+        final List<Object> args = new ArrayList<>(convertedArgs.size() + 1);
+        args.addAll(convertedArgs);
+        args.add(0, ctx);
+        return routing.getMethod().invoke(contract, args.toArray());
+    }
+
+    @Benchmark
+    public Object methodHandle() throws Throwable {
+        final Object[] args = new Object[convertedArgs.size() + 1];
+        for (int i = 0; i < convertedArgs.size(); i++) {
+            args[i + 1] = convertedArgs.get(i);
+        }
+        args[0] = ctx;
+        return routing.getMethodHandle().invokeExact(contract, args);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.metrics.Metrics;
+import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeID;
+import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeInput;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeBase;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ResponseUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Round trips per second between transactions and a stand-in peer, through the
+ * InvocationTaskManager. The stand-in peer runs on its own thread, as the gRPC
+ * inbound stream does, and answers each getState as soon as it sees it. The
+ * round trips are shared between a number of concurrent transactions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class InvocationTaskManagerBenchmark {
+
+    private static final int ROUND_TRIPS = 100;
+
+    private final BlockingQueue<ChaincodeMessage> toPeer = new LinkedBlockingQueue<>();
+    private final ByteString value = ByteString.copyFromUtf8("value");
+    private final ByteString payload = ChaincodeInput.newBuilder().addArgs(ByteString.copyFromUtf8("invoke")).build().toByteString();
+
+    @Param({"1", "5"})
+    private int transactions;
+
+    private String[] keys;
+    private InvocationTaskManager itm;
+    private Thread peer;
+    private volatile CountDownLatch completed;
+    private int txCount;
+
+    @Setup
+    public void setup() {
+        Logger.getLogger("org.hyperledger").setLevel(Level.WARNING);
+        Metrics.initialize(new Properties());
+
+        keys = new String[ROUND_TRIPS / transactions];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key" + i;
+        }
+
+        final ChaincodeBase chaincode = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                for (final String key : keys) {
+                    stub.getState(key);
+                }
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Properties getChaincodeConfig() {
+                // measure only the round trips
+                final Properties props = new Properties();
+                props.setProperty("CHAINCODE_STATE_CACHE_ENABLED", "false");
+                return props;
+            }
+        };
+        chaincode.setState(ChaincodeBase.CCState.READY);
+
+        itm = new InvocationTaskManager(chaincode, ChaincodeID.newBuilder().setName("benchmark").build());
+        itm.setResponseConsumer(toPeer::add);
+
+        peer = new Thread(this::runPeer, "stand-in peer");
+        peer.setDaemon(true);
+        peer.start();
+    }
+
+    private void runPeer() {
+        try {
+            while (true) {
+                final ChaincodeMessage msg = toPeer.take();
+                if (msg.getType() == ChaincodeMessage.Type.GET_STATE) {
+                    itm.onChaincodeMessage(ChaincodeMessage.newBuilder().setType(ChaincodeMessage.Type.RESPONSE).setChannelId(msg.getChannelId())
+                            .setTxid(msg.getTxid()).setPayload(value).build());
+                } else {
+                    completed.countDown();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        peer.interrupt();
+        itm.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROUND_TRIPS)
+    public void getState() throws InterruptedException {
+        completed = new CountDownLatch(transactions);
+        for (int i = 0; i < transactions; i++) {
+            itm.onChaincodeMessage(ChaincodeMessageFactory.newEventMessage(ChaincodeMessage.Type.TRANSACTION, "channel", Integer.toString(txCount++), payload));
+        }
+        completed.await();
+    }
+}
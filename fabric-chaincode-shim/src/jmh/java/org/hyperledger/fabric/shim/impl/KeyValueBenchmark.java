@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.protos.ledger.queryresult.KvQueryResult.KV;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponse;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResultBytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Time to go through a page of range query results, parsing each KV up front
+ * as before, or decoding each only when asked; reading just the keys, as a scan
+ * filtering on key would, or the values too. Run with -prof gc to see the
+ * allocation per page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KeyValueBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"100", "10000"})
+    private int valueSize;
+
+    private List<QueryResultBytes> results;
+
+    @Setup
+    public void setup() throws InvalidProtocolBufferException {
+        final QueryResponse.Builder page = QueryResponse.newBuilder().setHasMore(true).setId("query");
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            final KV kv = KV.newBuilder().setNamespace("mycc").setKey(String.format("asset%06d", i)).setValue(ByteString.copyFrom(new byte[valueSize]))
+                    .build();
+            page.addResults(QueryResultBytes.newBuilder().setResultBytes(kv.toByteString()));
+        }
+        // as it arrives from the peer
+        results = QueryResponse.parseFrom(page.build().toByteString()).getResultsList();
+    }
+
+    private static KeyValueImpl parsed(final QueryResultBytes result) {
+        try {
+            return new KeyValueImpl(KV.parseFrom(result.getResultBytes()));
+        } catch (final InvalidProtocolBufferException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Benchmark
+    public void parsedKeys(final Blackhole bh) {
+        for (final QueryResultBytes result : results) {
+            bh.consume(parsed(result).getKey());
+        }
+    }
+
+    @Benchmark
+    public void lazyKeys(final Blackhole bh) {
+        for (final QueryResultBytes result : results) {
+            bh.consume(new KeyValueImpl(result.getResultBytes()).getKey());
+        }
+    }
+
+    @Benchmark
+    public void parsedValues(final Blackhole bh) {
+        for (final QueryResultBytes result : results) {
+            bh.consume(parsed(result).getValue());
+        }
+    }
+
+    @Benchmark
+    public void lazyValueBuffers(final Blackhole bh) {
+        for (final QueryResultBytes result : results) {
+            final ByteBuffer value = new KeyValueImpl(result.getResultBytes()).getValueBuffer();
+            bh.consume(value.get(value.limit() - 1));
+        }
+    }
+}
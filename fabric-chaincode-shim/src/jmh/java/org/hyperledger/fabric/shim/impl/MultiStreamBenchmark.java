@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeInput;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+import org.hyperledger.fabric.protos.peer.ChaincodeSupportGrpc;
+import org.hyperledger.fabric.shim.ChaincodeBase;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ResponseUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.protobuf.ByteString;
+
+import io.grpc.Server;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Transactions per second through a chaincode connected to a loopback stand-in
+ * peer over one or more streams. The peer sends a batch of transactions spread
+ * across the streams; each does one getState, answered with a value of the
+ * given size, and completes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MultiStreamBenchmark {
+
+    private static final int BATCH = 200;
+
+    @Param({"1", "2", "4"})
+    private int streams;
+
+    @Param({"100", "65536"})
+    private int valueSize;
+
+    private Server server;
+    private StandInPeer peer;
+    private final AtomicLong txids = new AtomicLong();
+    private ByteString invokePayload;
+
+    private static final class StandInPeer extends ChaincodeSupportGrpc.ChaincodeSupportImplBase {
+        private final ByteString value;
+        private final List<StreamObserver<ChaincodeMessage>> ready = new CopyOnWriteArrayList<>();
+        private final Semaphore completed = new Semaphore(0);
+
+        StandInPeer(final ByteString value) {
+            this.value = value;
+        }
+
+        private static void send(final StreamObserver<ChaincodeMessage> stream, final ChaincodeMessage message) {
+            synchronized (stream) {
+                stream.onNext(message);
+            }
+        }
+
+        @Override
+        public StreamObserver<ChaincodeMessage> register(final StreamObserver<ChaincodeMessage> toChaincode) {
+            return new StreamObserver<ChaincodeMessage>() {
+                @Override
+                public void onNext(final ChaincodeMessage message) {
+                    switch (message.getType()) {
+                    case REGISTER:
+                        send(toChaincode, ChaincodeMessage.newBuilder().setType(ChaincodeMessage.Type.REGISTERED).build());
+                        send(toChaincode, ChaincodeMessage.newBuilder().setType(ChaincodeMessage.Type.READY).build());
+                        ready.add(toChaincode);
+                        break;
+                    case GET_STATE:
+                        send(toChaincode, ChaincodeMessage.newBuilder().setType(ChaincodeMessage.Type.RESPONSE).setChannelId(message.getChannelId())
+                                .setTxid(message.getTxid()).setPayload(value).build());
+                        break;
+                    case COMPLETED:
+                        completed.release();
+                        break;
+                    default:
+                        break;
+                    }
+                }
+
+                @Override
+                public void onError(final Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                    toChaincode.onCompleted();
+                }
+            };
+        }
+    }
+
+    private final class BenchChaincode extends ChaincodeBase {
+        @Override
+        public Response init(final ChaincodeStub stub) {
+            return ResponseUtils.newSuccessResponse();
+        }
+
+        @Override
+        public Response invoke(final ChaincodeStub stub) {
+            stub.getState("a");
+            return ResponseUtils.newSuccessResponse();
+        }
+
+        @Override
+        public Properties getChaincodeConfig() {
+            final Properties props = super.getChaincodeConfig();
+            props.setProperty("CHAINCODE_GRPC_STREAMS", Integer.toString(streams));
+            props.setProperty("CHAINCODE_GRPC_STREAMS_EXPERIMENTAL", "true");
+            return props;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        peer = new StandInPeer(ByteString.copyFrom(new byte[valueSize]));
+        server = NettyServerBuilder.forPort(0).addService(peer).build().start();
+
+        new BenchChaincode().start(new String[] {"-a", "127.0.0.1:" + server.getPort(), "-i", "benchmark"});
+        Logger.getLogger("").setLevel(Level.WARNING);
+        Logger.getLogger("org.hyperledger").setLevel(Level.WARNING);
+        while (peer.ready.size() < streams) {
+            Thread.sleep(10);
+        }
+
+        invokePayload = ChaincodeInput.newBuilder().addArgs(ByteString.copyFromUtf8("invoke")).build().toByteString();
+    }
+
+    @TearDown
+    public void teardown() throws InterruptedException {
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void transactions() throws InterruptedException {
+        for (int i = 0; i < BATCH; i++) {
+            final ChaincodeMessage tx = ChaincodeMessageFactory.newEventMessage(ChaincodeMessage.Type.TRANSACTION, "mychannel",
+                    Long.toString(txids.incrementAndGet()), invokePayload);
+            StandInPeer.send(peer.ready.get(i % streams), tx);
+        }
+        peer.completed.acquire(BATCH);
+    }
+}
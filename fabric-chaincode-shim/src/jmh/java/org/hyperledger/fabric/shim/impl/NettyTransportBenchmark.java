@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+import org.hyperledger.fabric.protos.peer.ChaincodeSupportGrpc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.protobuf.ByteString;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Round trips per second over a loopback connection to a stand-in peer, with
+ * each of the transport settings on its own. The chaincode side sends getState
+ * requests a batch at a time, and the stand-in peer answers each with a value
+ * of the given size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class NettyTransportBenchmark {
+
+    private static final int BATCH = 100;
+
+    @Param({"default", "directExecutor", "eventLoop1", "unpooled", "window4m"})
+    private String setting;
+
+    @Param({"100", "16384", "1048576"})
+    private int valueSize;
+
+    private Server server;
+    private ManagedChannel channel;
+    private StreamObserver<ChaincodeMessage> toPeer;
+    private final Semaphore responses = new Semaphore(0);
+    private ChaincodeMessage request;
+
+    private static final class StandInPeer extends ChaincodeSupportGrpc.ChaincodeSupportImplBase {
+        private final ByteString value;
+
+        StandInPeer(final ByteString value) {
+            this.value = value;
+        }
+
+        @Override
+        public StreamObserver<ChaincodeMessage> register(final StreamObserver<ChaincodeMessage> toChaincode) {
+            return new StreamObserver<ChaincodeMessage>() {
+                @Override
+                public void onNext(final ChaincodeMessage message) {
+                    toChaincode.onNext(ChaincodeMessage.newBuilder().setType(ChaincodeMessage.Type.RESPONSE).setChannelId(message.getChannelId())
+                            .setTxid(message.getTxid()).setPayload(value).build());
+                }
+
+                @Override
+                public void onError(final Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                    toChaincode.onCompleted();
+                }
+            };
+        }
+    }
+
+    private Properties props() {
+        final Properties props = new Properties();
+        switch (setting) {
+        case "directExecutor":
+            props.setProperty("CHAINCODE_GRPC_DIRECT_EXECUTOR", "true");
+            break;
+        case "eventLoop1":
+            props.setProperty("CHAINCODE_GRPC_EVENT_LOOP_THREADS", "1");
+            break;
+        case "unpooled":
+            props.setProperty("CHAINCODE_GRPC_ALLOCATOR", "unpooled");
+            break;
+        case "window4m":
+            props.setProperty("CHAINCODE_GRPC_FLOW_CONTROL_WINDOW", "4194304");
+            break;
+        default:
+            break;
+        }
+        return props;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        Logger.getLogger("org.hyperledger").setLevel(Level.WARNING);
+
+        final byte[] bytes = new byte[valueSize];
+        server = NettyServerBuilder.forPort(0).addService(new StandInPeer(ByteString.copyFrom(bytes))).build().start();
+
+        final NettyTransport transport = new NettyTransport(props());
+        channel = transport.configure(NettyChannelBuilder.forAddress("127.0.0.1", server.getPort()).usePlaintext()).build();
+        toPeer = ChaincodeSupportGrpc.newStub(channel).register(new StreamObserver<ChaincodeMessage>() {
+            @Override
+            public void onNext(final ChaincodeMessage message) {
+                responses.release();
+            }
+
+            @Override
+            public void onError(final Throwable t) {
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+
+        request = ChaincodeMessageFactory.newGetStateEventMessage("mychannel", "txid", "", "key");
+    }
+
+    @TearDown
+    public void teardown() throws InterruptedException {
+        toPeer.onCompleted();
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void roundTrips() throws InterruptedException {
+        for (int i = 0; i < BATCH; i++) {
+            toPeer.onNext(request);
+        }
+        responses.acquire(BATCH);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.grpc.stub.CallStreamObserver;
+
+/**
+ * Messages per second sent to the peer by a number of concurrent tasks, through
+ * a fair lock around each write as before, and through the
+ * OutboundMessageWriter. Writing to the stand-in stream costs a little CPU, as
+ * serialising a message for gRPC would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OutboundMessageWriterBenchmark {
+
+    private static final int MESSAGES = 10_000;
+    private static final int WRITE_COST = 50;
+
+    @Param({"5", "50", "500"})
+    private int tasks;
+
+    private ExecutorService executor;
+    private ChaincodeMessage message;
+
+    private static final class Stream extends CallStreamObserver<ChaincodeMessage> {
+        private Blackhole blackhole;
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setOnReadyHandler(final Runnable onReadyHandler) {
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+        }
+
+        @Override
+        public void request(final int count) {
+        }
+
+        @Override
+        public void setMessageCompression(final boolean enable) {
+        }
+
+        @Override
+        public void onNext(final ChaincodeMessage value) {
+            Blackhole.consumeCPU(WRITE_COST);
+            blackhole.consume(value);
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+
+    private static final class FairLockWriter implements Consumer<ChaincodeMessage> {
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private final Stream stream;
+
+        FairLockWriter(final Stream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void accept(final ChaincodeMessage t) {
+            lock.lock();
+            stream.onNext(t);
+            lock.unlock();
+        }
+    }
+
+    @Setup
+    public void setup() {
+        Logger.getLogger("org.hyperledger").setLevel(Level.WARNING);
+        executor = Executors.newFixedThreadPool(tasks);
+        message = ChaincodeMessageFactory.newGetStateEventMessage("channel", "txid", "", "key");
+    }
+
+    @TearDown
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    private void send(final Consumer<ChaincodeMessage> writer) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(tasks);
+        final int each = MESSAGES / tasks;
+        for (int t = 0; t < tasks; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < each; i++) {
+                    writer.accept(message);
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+    }
+
+    private Stream stream(final Blackhole blackhole) {
+        final Stream stream = new Stream();
+        stream.blackhole = blackhole;
+        return stream;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void fairLock(final Blackhole blackhole) throws InterruptedException {
+        send(new FairLockWriter(stream(blackhole)));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void writer(final Blackhole blackhole) throws InterruptedException {
+        final OutboundMessageWriter writer = new OutboundMessageWriter();
+        writer.setStream(stream(blackhole));
+        send(writer);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.protos.ledger.queryresult.KvQueryResult.KV;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponse;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResultBytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Time to set up the iterator for a page of a paginated query, parsing the
+ * response twice and copying each result out of it as before, or once and
+ * leaving the results in place. Run with -prof gc to see the allocation per
+ * page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryResponseBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"100", "10000"})
+    private int valueSize;
+
+    private ByteString response;
+
+    @Setup
+    public void setup() {
+        final QueryResponse.Builder page = QueryResponse.newBuilder().setHasMore(false).setId("query");
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            final KV kv = KV.newBuilder().setNamespace("mycc").setKey(String.format("asset%06d", i)).setValue(ByteString.copyFrom(new byte[valueSize]))
+                    .build();
+            page.addResults(QueryResultBytes.newBuilder().setResultBytes(kv.toByteString()));
+        }
+        page.setMetadata(QueryResponseMetadata.newBuilder().setBookmark("asset000099").setFetchedRecordsCount(PAGE_SIZE).build().toByteString());
+        response = ByteString.copyFrom(page.build().toByteArray());
+    }
+
+    @Benchmark
+    public Object parsedTwice() throws InvalidProtocolBufferException {
+        final QueryResponse first = QueryResponse.parseFrom(response);
+        final QueryResponse second = QueryResponse.parseFrom(response);
+        QueryResponseMetadata.parseFrom(second.getMetadata());
+        return first.getResultsList();
+    }
+
+    @Benchmark
+    public Object iterator() {
+        final QueryResultsIteratorWithMetadataImpl<QueryResultBytes> iterator = new QueryResultsIteratorWithMetadataImpl<>(null, "mychannel", "txid",
+                response, r -> r);
+        iterator.getMetadata();
+        return iterator;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Responses from the peer matched to their task per second, keyed by the
+ * channel id and txid joined into a String as before, and by TxKey. Each
+ * response is parsed as it would be off the wire, as that decides what has
+ * already been decoded. Run with -prof gc to see the allocation per response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TxKeyBenchmark {
+
+    @Param({"10", "1000"})
+    private int tasks;
+
+    private final ConcurrentHashMap<String, Object> stringKeys = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<TxKey, Object> txKeys = new ConcurrentHashMap<>();
+    private byte[][] responses;
+    private int next;
+
+    @Setup
+    public void setup() throws InvalidProtocolBufferException {
+        responses = new byte[tasks][];
+        for (int i = 0; i < tasks; i++) {
+            // txids are the hex of a sha256
+            final String txid = String.format("%064x", i * 0x9E3779B97F4A7C15L);
+            final ChaincodeMessage response = ChaincodeMessageFactory.newEventMessage(ChaincodeMessage.Type.RESPONSE, "mychannel", txid,
+                    ByteString.copyFromUtf8("value"));
+            responses[i] = response.toByteArray();
+
+            final ChaincodeMessage parsed = ChaincodeMessage.parseFrom(responses[i]);
+            stringKeys.put(parsed.getChannelId() + parsed.getTxid(), parsed);
+            txKeys.put(TxKey.of(parsed), parsed);
+        }
+    }
+
+    private ChaincodeMessage nextResponse() throws InvalidProtocolBufferException {
+        next = (next + 1) % tasks;
+        return ChaincodeMessage.parseFrom(responses[next]);
+    }
+
+    @Benchmark
+    public Object parseOnly() throws InvalidProtocolBufferException {
+        return nextResponse();
+    }
+
+    @Benchmark
+    public Object stringKey() throws InvalidProtocolBufferException {
+        final ChaincodeMessage message = nextResponse();
+        return stringKeys.get(message.getChannelId() + message.getTxid());
+    }
+
+    @Benchmark
+    public Object txKey() throws InvalidProtocolBufferException {
+        return txKeys.get(TxKey.of(nextResponse()));
+    }
+}
@@ -18,6 +18,7 @@ import org.hyperledger.fabric.contract.execution.SerializerInterface;
 import org.hyperledger.fabric.contract.metadata.MetadataBuilder;
 import org.hyperledger.fabric.contract.routing.ContractDefinition;
 import org.hyperledger.fabric.contract.routing.RoutingRegistry;
+import org.hyperledger.fabric.contract.routing.TransactionType;
 import org.hyperledger.fabric.contract.routing.TxFunction;
 import org.hyperledger.fabric.contract.routing.TypeRegistry;
 import org.hyperledger.fabric.contract.routing.impl.RoutingRegistryImpl;
@@ -131,6 +132,25 @@ public final class ContractRouter extends ChaincodeBase {
         return processRequest(stub);
     }
 
+    /**
+     * Functions are queries if they are annotated as not to be submitted, or are
+     * of type QUERY. Unknown functions are not.
+     */
+    @Override
+    public boolean isQueryFunction(final String function) {
+        // split as ContractInvocationRequest does
+        final String[] funcParts = function.split(":");
+        final String namespace = funcParts.length == 2 ? funcParts[0] : InvocationRequest.DEFAULT_NAMESPACE;
+        final String method = funcParts.length == 2 ? funcParts[1] : funcParts[0];
+
+        try {
+            final ContractDefinition contract = registry.getContract(namespace);
+            return contract.hasTxFunction(method) && contract.getTxFunction(method).getType() == TransactionType.QUERY;
+        } catch (final ContractRuntimeException e) {
+            return false;
+        }
+    }
+
     /**
      * Given the Invocation Request, return the routing object for this call.
      *
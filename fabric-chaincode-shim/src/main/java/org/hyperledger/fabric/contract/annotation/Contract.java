@@ -53,4 +53,38 @@ public @interface Contract {
      */
     String transactionSerializer() default "org.hyperledger.fabric.contract.execution.JSONTransactionSerializer";
 
+    /**
+     * Lifecycle of the contract instances.
+     *
+     * By default a new instance of the contract class is created for every
+     * transaction. Contracts that hold no state in their instance fields can
+     * instead have a single instance shared by all transactions, or one instance
+     * per thread, avoiding the cost of creating an instance each time.
+     *
+     * @return Lifecycle of the instances of this contract
+     */
+    Lifecycle lifecycle() default Lifecycle.TRANSACTION;
+
+    /**
+     * How instances of the contract class are created and reused.
+     */
+    enum Lifecycle {
+        /**
+         * A new instance is created for each transaction.
+         */
+        TRANSACTION,
+
+        /**
+         * One instance is created, and used concurrently by all transactions.
+         */
+        SINGLETON,
+
+        /**
+         * One instance is created for each thread that executes transactions.
+         * This is for the thread pool; with virtual threads (TP_EXECUTOR=virtual)
+         * each transaction has a thread of its own, so this is the same as
+         * TRANSACTION.
+         */
+        THREAD
+    }
 }
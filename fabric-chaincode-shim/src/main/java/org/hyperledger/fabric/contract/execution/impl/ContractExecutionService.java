@@ -7,7 +7,6 @@
 package org.hyperledger.fabric.contract.execution.impl;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -54,11 +53,11 @@ public class ContractExecutionService implements ExecutionService {
             final ContractInterface contractObject = rd.getContractInstance();
             final Context context = contractObject.createContext(stub);
 
-            final List<Object> args = convertArgs(req.getArgs(), txFn);
-            args.add(0, context); // force context into 1st position, other elements move up
+            final Object[] args = convertArgs(req.getArgs(), txFn);
+            args[0] = context;
 
             contractObject.beforeTransaction(context);
-            final Object value = rd.getMethod().invoke(contractObject, args.toArray());
+            final Object value = invoke(rd, contractObject, args);
             contractObject.afterTransaction(context, value);
 
             if (value == null) {
@@ -67,22 +66,32 @@ public class ContractExecutionService implements ExecutionService {
                 response = ResponseUtils.newSuccessResponse(convertReturn(value, txFn));
             }
 
-        } catch (IllegalAccessException | InstantiationException | NoSuchMethodException e) {
+        } catch (IllegalAccessException | InstantiationException | InvocationTargetException | NoSuchMethodException e) {
             final String message = String.format("Could not execute contract method: %s", rd.toString());
             throw new ContractRuntimeException(message, e);
-        } catch (final InvocationTargetException e) {
-            final Throwable cause = e.getCause();
-
-            if (cause instanceof ChaincodeException) {
-                throw (ChaincodeException) cause;
-            } else {
-                throw new ContractRuntimeException("Error during contract method execution", cause);
-            }
         }
 
         return response;
     }
 
+    /**
+     * Invoke the transaction function via its method handle.
+     *
+     * @param rd             Routing of the transaction function
+     * @param contractObject Contract instance
+     * @param args           Context followed by the transaction arguments
+     * @return Value returned by the transaction function, null if void
+     */
+    private Object invoke(final TxFunction.Routing rd, final ContractInterface contractObject, final Object[] args) {
+        try {
+            return rd.getMethodHandle().invokeExact(contractObject, args);
+        } catch (final ChaincodeException e) {
+            throw e;
+        } catch (final Throwable cause) {
+            throw new ContractRuntimeException("Error during contract method execution", cause);
+        }
+    }
+
     private byte[] convertReturn(final Object obj, final TxFunction txFn) {
         byte[] buffer;
         final TypeSchema ts = txFn.getReturnSchema();
@@ -91,12 +100,12 @@ public class ContractExecutionService implements ExecutionService {
         return buffer;
     }
 
-    private List<Object> convertArgs(final List<byte[]> stubArgs, final TxFunction txFn) {
+    private Object[] convertArgs(final List<byte[]> stubArgs, final TxFunction txFn) {
 
         final List<ParameterDefinition> schemaParams = txFn.getParamsList();
-        final List<Object> args = new ArrayList<>(stubArgs.size() + 1); // allow for context as the first argument
+        final Object[] args = new Object[schemaParams.size() + 1]; // allow for context as the first argument
         for (int i = 0; i < schemaParams.size(); i++) {
-            args.add(i, serializer.fromBuffer(stubArgs.get(i), schemaParams.get(i).getSchema()));
+            args[i + 1] = serializer.fromBuffer(stubArgs.get(i), schemaParams.get(i).getSchema());
         }
         return args;
     }
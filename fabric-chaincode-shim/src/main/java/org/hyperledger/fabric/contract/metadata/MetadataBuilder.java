@@ -16,6 +16,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.everit.json.schema.Schema;
@@ -68,6 +69,10 @@ public final class MetadataBuilder {
     private static Map<String, Object> overallInfoMap = new HashMap<String, Object>();
     private static Map<String, Object> componentMap = new HashMap<String, Object>();
 
+    // Changes whenever a component is added, so that any schemas compiled against
+    // the previous set of components are reloaded
+    private static AtomicInteger componentsVersion = new AtomicInteger();
+
     // The schema client used to load any other referenced schemas
     private static SchemaClient schemaClient = new DefaultSchemaClient();
 
@@ -118,6 +123,24 @@ public final class MetadataBuilder {
         logger.info("Validating schema created");
         MetadataBuilder.validate();
 
+        // compile the schemas used to validate complex arguments now, rather than
+        // on the first transaction that uses them
+        contractDefinitions.forEach(cd -> cd.getTxFunctions().forEach(txFn -> {
+            txFn.getParamsList().forEach(pd -> compileSchema(pd.getSchema()));
+        }));
+        dataTypes.forEach(dtd -> dtd.getProperties().values().forEach(pd -> compileSchema(pd.getSchema())));
+    }
+
+    /**
+     * Only references to complex data-types are validated against a schema, so
+     * only those need compiling ahead of time.
+     *
+     * @param ts TypeSchema of a parameter or property
+     */
+    private static void compileSchema(final TypeSchema ts) {
+        if (ts.getRef() != null) {
+            ts.getCompiledSchema();
+        }
     }
 
     /**
@@ -138,6 +161,7 @@ public final class MetadataBuilder {
         component.put("properties", propertiesMap);
 
         componentMap.put(datatype.getSimpleName(), component);
+        componentsVersion.incrementAndGet();
     }
 
     /**
@@ -272,4 +296,12 @@ public final class MetadataBuilder {
     public static Map<?, ?> getComponents() {
         return componentMap;
     }
+
+    /**
+     *
+     * @return Version of the components, changes each time one is added
+     */
+    static int getComponentsVersion() {
+        return componentsVersion.get();
+    }
 }
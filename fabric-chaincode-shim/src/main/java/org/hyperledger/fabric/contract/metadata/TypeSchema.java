@@ -263,17 +263,31 @@ public final class TypeSchema extends HashMap<String, Object> {
     }
 
 
-   /**
-    * Validates the object against this schema.
-    *
-    * @param obj
-    */
-    public void validate(final JSONObject obj) {
-        // get the components bit of the main metadata
+    /**
+     * Compiled form of this schema, together with the version of the components
+     * it was compiled against.
+     */
+    private static final class CompiledSchema {
+        private final int componentsVersion;
+        private final Schema schema;
 
-        final JSONObject toValidate = new JSONObject();
-        toValidate.put("prop", obj);
+        CompiledSchema(final int componentsVersion, final Schema schema) {
+            this.componentsVersion = componentsVersion;
+            this.schema = schema;
+        }
+    }
 
+    private transient volatile CompiledSchema compiledSchema;
+
+    /**
+     * Builds the everit schema used to validate values against this schema.
+     *
+     * The components known to the MetadataBuilder are included so that any
+     * references to complex types can be resolved.
+     *
+     * @return newly loaded Schema
+     */
+    Schema loadSchema() {
         JSONObject schemaJSON;
         if (this.containsKey("schema")) {
             schemaJSON = new JSONObject((Map) this.get("schema"));
@@ -284,7 +298,35 @@ public final class TypeSchema extends HashMap<String, Object> {
         final JSONObject rawSchema = new JSONObject();
         rawSchema.put("properties", new JSONObject().put("prop", schemaJSON));
         rawSchema.put("components", new JSONObject().put("schemas", MetadataBuilder.getComponents()));
-        final Schema schema = SchemaLoader.load(rawSchema);
+        return SchemaLoader.load(rawSchema);
+    }
+
+    /**
+     * Returns the compiled schema, loading it only if it has not already been
+     * loaded against the current set of components.
+     *
+     * @return Compiled Schema
+     */
+    Schema getCompiledSchema() {
+        final int componentsVersion = MetadataBuilder.getComponentsVersion();
+        CompiledSchema compiled = this.compiledSchema;
+        if (compiled == null || compiled.componentsVersion != componentsVersion) {
+            compiled = new CompiledSchema(componentsVersion, loadSchema());
+            this.compiledSchema = compiled;
+        }
+        return compiled.schema;
+    }
+
+    /**
+     * Validates the object against this schema.
+     *
+     * @param obj
+     */
+    public void validate(final JSONObject obj) {
+        final JSONObject toValidate = new JSONObject();
+        toValidate.put("prop", obj);
+
+        final Schema schema = getCompiledSchema();
         try {
             schema.validate(toValidate);
         } catch (final ValidationException e) {
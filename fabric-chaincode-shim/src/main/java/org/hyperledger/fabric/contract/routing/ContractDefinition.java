@@ -6,6 +6,7 @@
 
 package org.hyperledger.fabric.contract.routing;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Collection;
 
@@ -44,6 +45,16 @@ public interface ContractDefinition {
      */
     Class<? extends ContractInterface> getContractImpl();
 
+    /**
+     * @return Instance of the contract to execute a transaction, according to the
+     *         lifecycle given in the Contract annotation
+     * @throws IllegalAccessException
+     * @throws InstantiationException
+     * @throws InvocationTargetException
+     * @throws NoSuchMethodException
+     */
+    ContractInterface getContractInstance() throws IllegalAccessException, InstantiationException, InvocationTargetException, NoSuchMethodException;
+
     /**
      * @param m The java.lang.reflect object that is the method that is a tx
      *          function
@@ -5,6 +5,7 @@
  */
 package org.hyperledger.fabric.contract.routing;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.List;
@@ -18,6 +19,15 @@ public interface TxFunction {
 
         Method getMethod();
 
+        /**
+         * Handle to invoke the transaction function with. The handle is of type
+         * (ContractInterface, Object[])Object; the array holds the Context
+         * followed by the converted arguments. A void function returns null.
+         *
+         * @return MethodHandle
+         */
+        MethodHandle getMethodHandle();
+
         Class<? extends ContractInterface> getContractClass();
 
         ContractInterface getContractInstance() throws IllegalAccessException, InstantiationException, InvocationTargetException, NoSuchMethodException;
@@ -5,6 +5,7 @@
  */
 package org.hyperledger.fabric.contract.routing.impl;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.HashMap;
@@ -34,8 +35,18 @@ public final class ContractDefinitionImpl implements ContractDefinition {
     private final boolean isDefault;
     private final Class<? extends ContractInterface> contractClz;
     private final Contract contractAnnotation;
+    private final Contract.Lifecycle lifecycle;
     private TxFunction unknownTx;
 
+    // instances that are reused, depending on the lifecycle of the contract
+    private volatile ContractInterface singletonInstance;
+    private final ThreadLocal<ContractInterface> threadInstance = new ThreadLocal<>();
+
+    // Thread.isVirtual(), on Java 21 or later; a virtual thread runs only one
+    // transaction, so an instance per thread is an instance per transaction
+    private static final Method IS_VIRTUAL = isVirtualMethod();
+    private volatile boolean warnedVirtual;
+
     /**
      *
      * @param cl
@@ -55,6 +66,7 @@ public final class ContractDefinitionImpl implements ContractDefinition {
 
         isDefault = (cl.getAnnotation(Default.class) != null);
         contractAnnotation = cl.getAnnotation(Contract.class);
+        lifecycle = contractAnnotation.lifecycle();
         contractClz = cl;
 
         try {
@@ -69,6 +81,7 @@ public final class ContractDefinitionImpl implements ContractDefinition {
 
         logger.info(() -> "Found class: " + cl.getCanonicalName());
         logger.debug(() -> "Namespace: " + this.name);
+        logger.debug(() -> "Lifecycle: " + this.lifecycle);
     }
 
     @Override
@@ -86,6 +99,58 @@ public final class ContractDefinitionImpl implements ContractDefinition {
         return contractClz;
     }
 
+    @Override
+    public ContractInterface getContractInstance() throws IllegalAccessException, InstantiationException, InvocationTargetException, NoSuchMethodException {
+        switch (lifecycle) {
+        case SINGLETON:
+            ContractInterface instance = singletonInstance;
+            if (instance == null) {
+                synchronized (this) {
+                    instance = singletonInstance;
+                    if (instance == null) {
+                        instance = contractClz.getDeclaredConstructor().newInstance();
+                        singletonInstance = instance;
+                    }
+                }
+            }
+            return instance;
+        case THREAD:
+            ContractInterface threadContract = threadInstance.get();
+            if (threadContract == null) {
+                warnIfVirtual();
+                threadContract = contractClz.getDeclaredConstructor().newInstance();
+                threadInstance.set(threadContract);
+            }
+            return threadContract;
+        default:
+            return contractClz.getDeclaredConstructor().newInstance();
+        }
+    }
+
+    private static Method isVirtualMethod() {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        } catch (final NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static boolean isVirtualThread() {
+        try {
+            return IS_VIRTUAL != null && (Boolean) IS_VIRTUAL.invoke(Thread.currentThread());
+        } catch (final ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private void warnIfVirtual() {
+        if (!warnedVirtual && isVirtualThread()) {
+            warnedVirtual = true;
+            logger.warning(() -> "Contract " + name + " has the THREAD lifecycle, which reuses instances only on the thread pool; "
+                    + "with virtual threads [TP_EXECUTOR] an instance is created for every transaction");
+        }
+    }
+
     @Override
     public TxFunction addTxFunction(final Method m) {
         logger.debug(() -> "Adding method " + m.getName());
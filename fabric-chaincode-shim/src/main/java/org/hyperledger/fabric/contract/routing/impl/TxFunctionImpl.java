@@ -5,6 +5,9 @@
  */
 package org.hyperledger.fabric.contract.routing.impl;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -37,6 +40,8 @@ public final class TxFunctionImpl implements TxFunction {
     public final class RoutingImpl implements Routing {
 
         private final Method method;
+        private final MethodHandle methodHandle;
+        private final ContractDefinition contract;
         private final Class<? extends ContractInterface> clazz;
         private final String serializerName;
 
@@ -47,15 +52,40 @@ public final class TxFunctionImpl implements TxFunction {
          */
         public RoutingImpl(final Method method, final ContractDefinition contract) {
             this.method = method;
+            this.methodHandle = createMethodHandle(method);
+            this.contract = contract;
             this.clazz = contract.getContractImpl();
             this.serializerName = contract.getAnnotation().transactionSerializer();
         }
 
+        /**
+         * Create the handle once, so the access checks and argument handling are not
+         * repeated for each transaction.
+         *
+         * @param m Method of the transaction function
+         * @return MethodHandle of type (ContractInterface, Object[])Object
+         */
+        private MethodHandle createMethodHandle(final Method m) {
+            try {
+                m.setAccessible(true);
+                return MethodHandles.lookup().unreflect(m)
+                        .asSpreader(Object[].class, m.getParameterCount())
+                        .asType(MethodType.methodType(Object.class, ContractInterface.class, Object[].class));
+            } catch (final IllegalAccessException | SecurityException e) {
+                throw new ContractRuntimeException("Unable to access transaction function " + m.getName(), e);
+            }
+        }
+
         @Override
         public Method getMethod() {
             return method;
         }
 
+        @Override
+        public MethodHandle getMethodHandle() {
+            return methodHandle;
+        }
+
         @Override
         public Class<? extends ContractInterface> getContractClass() {
             return clazz;
@@ -63,7 +93,7 @@ public final class TxFunctionImpl implements TxFunction {
 
         @Override
         public ContractInterface getContractInstance() throws IllegalAccessException, InstantiationException, InvocationTargetException, NoSuchMethodException {
-            return clazz.getDeclaredConstructor().newInstance();
+            return contract.getContractInstance();
         }
 
         @Override
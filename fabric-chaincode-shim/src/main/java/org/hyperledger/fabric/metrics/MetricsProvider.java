@@ -45,4 +45,13 @@ public interface MetricsProvider {
     default void setTaskMetricsCollector(final TaskMetricsCollector taskService) {
     };
 
+    /**
+     * Called each time the adaptive pool sizing changes the size of the thread
+     * pool that transactions run on. Only called if TP_ADAPTIVE_ENABLED is set.
+     *
+     * @param change
+     */
+    default void poolSizeChanged(final PoolSizeChange change) {
+    };
+
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.metrics;
+
+/**
+ * A change the adaptive pool sizing has made to the size of the thread pool,
+ * along with what it saw that led to it.
+ */
+public final class PoolSizeChange {
+
+    private final int previousSize;
+    private final int newSize;
+    private final int queueDepth;
+    private final double waitFraction;
+
+    /**
+     *
+     * @param previousSize Pool size before the change
+     * @param newSize      Pool size after the change
+     * @param queueDepth   Tasks waiting for a thread
+     * @param waitFraction Fraction of their time that recent tasks spent waiting
+     *                     for the peer
+     */
+    public PoolSizeChange(final int previousSize, final int newSize, final int queueDepth, final double waitFraction) {
+        this.previousSize = previousSize;
+        this.newSize = newSize;
+        this.queueDepth = queueDepth;
+        this.waitFraction = waitFraction;
+    }
+
+    /**
+     * @return Pool size before the change
+     */
+    public int getPreviousSize() {
+        return previousSize;
+    }
+
+    /**
+     * @return Pool size after the change
+     */
+    public int getNewSize() {
+        return newSize;
+    }
+
+    /**
+     * @return Tasks that were waiting for a thread
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return Fraction, between 0 and 1, of their time that recent tasks spent
+     *         waiting for the peer
+     */
+    public double getWaitFraction() {
+        return waitFraction;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{ \"previous_pool_size\":%d , \"pool_size\":%d , \"queue_depth\":%d , \"wait_fraction\":%.2f }", previousSize, newSize,
+                queueDepth, waitFraction);
+    }
+}
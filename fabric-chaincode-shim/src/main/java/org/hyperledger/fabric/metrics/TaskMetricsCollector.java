@@ -5,6 +5,9 @@
  */
 package org.hyperledger.fabric.metrics;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * Collect metrics relating to the task execution.
  *
@@ -64,4 +67,15 @@ public interface TaskMetricsCollector {
      * @return int &gt; 0
      */
     int getMaximumPoolSize();
+
+    /**
+     * Currently waiting tasks of each channel, when tasks are scheduled by
+     * channel.
+     *
+     * @return map of channel id to number of waiting tasks; empty if tasks are not
+     *         scheduled by channel
+     */
+    default Map<String, Integer> getChannelQueueCounts() {
+        return Collections.emptyMap();
+    }
 }
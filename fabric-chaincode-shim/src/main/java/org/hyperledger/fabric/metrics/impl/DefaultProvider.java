@@ -5,13 +5,16 @@
  */
 package org.hyperledger.fabric.metrics.impl;
 
+import java.util.Map;
 import java.util.Properties;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import org.hyperledger.fabric.Logging;
 import org.hyperledger.fabric.metrics.MetricsProvider;
+import org.hyperledger.fabric.metrics.PoolSizeChange;
 import org.hyperledger.fabric.metrics.TaskMetricsCollector;
 
 /**
@@ -36,6 +39,11 @@ public final class DefaultProvider implements MetricsProvider {
         this.taskService = taskService;
     }
 
+    @Override
+    public void poolSizeChanged(final PoolSizeChange change) {
+        perflogger.info(() -> "pool_size_changed " + change);
+    }
+
     private static final int TIME_INTERVAL = 5000;
 
     @Override
@@ -60,6 +68,12 @@ public final class DefaultProvider implements MetricsProvider {
             sb.append(String.format(" \"core_pool_size\":%d ", DefaultProvider.this.taskService.getCorePoolSize())).append(',');
             sb.append(String.format(" \"current_task_count\":%d ", DefaultProvider.this.taskService.getCurrentTaskCount())).append(',');
             sb.append(String.format(" \"current_queue_depth\":%d ", DefaultProvider.this.taskService.getCurrentQueueCount()));
+            final Map<String, Integer> channels = DefaultProvider.this.taskService.getChannelQueueCounts();
+            if (!channels.isEmpty()) {
+                sb.append(", \"channel_queue_depth\":{");
+                sb.append(channels.entrySet().stream().map(e -> String.format(" \"%s\":%d ", e.getKey(), e.getValue())).collect(Collectors.joining(",")));
+                sb.append('}');
+            }
             return sb.append('}').toString();
         });
 
@@ -39,5 +39,9 @@
  *
  * If no file is supplied metrics are not enabled, the values shown for the
  * thread pool are used.
+ *
+ * Further settings in the same file, for how transactions are run and how
+ * the chaincode talks to the peer, are described in
+ * {@link org.hyperledger.fabric.shim}.
  */
 package org.hyperledger.fabric.metrics;
@@ -23,6 +23,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
@@ -41,6 +42,8 @@ import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeID;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
 import org.hyperledger.fabric.shim.impl.ChaincodeSupportClient;
 import org.hyperledger.fabric.shim.impl.InvocationTaskManager;
+import org.hyperledger.fabric.shim.impl.NettyTransport;
+import org.hyperledger.fabric.shim.impl.ReconnectSupervisor;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.util.JsonFormat;
@@ -100,6 +103,7 @@ public abstract class ChaincodeBase implements Chaincode {
     private static final String CORE_PEER_LOCALMSPID = "CORE_PEER_LOCALMSPID";
     private Properties props;
     private Level logLevel;
+    private NettyTransport transport;
 
     static {
         Security.addProvider(new BouncyCastleProvider());
@@ -138,14 +142,57 @@ public abstract class ChaincodeBase implements Chaincode {
         // gRPC streams
 
         final ChaincodeID chaincodeId = ChaincodeID.newBuilder().setName(this.id).build();
-        final ManagedChannelBuilder<?> channelBuilder = newChannelBuilder();
-        final ChaincodeSupportClient chaincodeSupportClient = new ChaincodeSupportClient(channelBuilder);
 
-        final InvocationTaskManager itm = InvocationTaskManager.getManager(this, chaincodeId);
-        chaincodeSupportClient.start(itm);
+        // Optionally, open several streams to the peer, each on its own channel
+        // and with its own InvocationTaskManager
+        final Properties props = getChaincodeConfig();
+        final int streams = grpcStreams(props);
+
+        // Optionally, connect again should a stream fail, keeping this chaincode
+        // and all it has loaded
+        final boolean reconnect = Boolean.parseBoolean((String) props.getOrDefault("CHAINCODE_RECONNECT_ENABLED", "false"));
+        LOGGER.info(() -> "Reconnect [CHAINCODE_RECONNECT_ENABLED]" + reconnect);
+        if (reconnect) {
+            final long initialBackoff = Long.parseLong((String) props.getOrDefault("CHAINCODE_RECONNECT_INITIAL_BACKOFF_MS", "1000"));
+            final long maxBackoff = Long.parseLong((String) props.getOrDefault("CHAINCODE_RECONNECT_MAX_BACKOFF_MS", "30000"));
+            final int maxAttempts = Integer.parseInt((String) props.getOrDefault("CHAINCODE_RECONNECT_MAX_ATTEMPTS", "10"));
+            LOGGER.info(() -> "Reconnect Initial Backoff [CHAINCODE_RECONNECT_INITIAL_BACKOFF_MS]" + initialBackoff);
+            LOGGER.info(() -> "Reconnect Max Backoff [CHAINCODE_RECONNECT_MAX_BACKOFF_MS]" + maxBackoff);
+            LOGGER.info(() -> "Reconnect Max Attempts [CHAINCODE_RECONNECT_MAX_ATTEMPTS]" + maxAttempts);
+
+            // each stream is looked after separately
+            for (int i = 0; i < streams; i++) {
+                new ReconnectSupervisor(this::newChannelBuilder, () -> InvocationTaskManager.getManager(this, chaincodeId), initialBackoff,
+                        maxBackoff, maxAttempts).start();
+            }
+            return;
+        }
+
+        for (int i = 0; i < streams; i++) {
+            final ManagedChannelBuilder<?> channelBuilder = newChannelBuilder();
+            final ChaincodeSupportClient chaincodeSupportClient = new ChaincodeSupportClient(channelBuilder);
+
+            final InvocationTaskManager itm = InvocationTaskManager.getManager(this, chaincodeId);
+            chaincodeSupportClient.start(itm);
+        }
 
     }
 
+    private static int grpcStreams(final Properties props) {
+        final int streams = Integer.parseInt((String) props.getOrDefault("CHAINCODE_GRPC_STREAMS", "1"));
+        final boolean experimental = Boolean.parseBoolean((String) props.getOrDefault("CHAINCODE_GRPC_STREAMS_EXPERIMENTAL", "false"));
+        LOGGER.info(() -> "gRPC Streams [CHAINCODE_GRPC_STREAMS]" + streams);
+        LOGGER.info(() -> "Experimental gRPC Streams [CHAINCODE_GRPC_STREAMS_EXPERIMENTAL]" + experimental);
+        if (streams < 1) {
+            throw new IllegalArgumentException("CHAINCODE_GRPC_STREAMS must be at least 1");
+        }
+        if (streams > 1 && !experimental) {
+            LOGGER.warning("More than one gRPC stream is experimental, set CHAINCODE_GRPC_STREAMS_EXPERIMENTAL=true to allow it; using one");
+            return 1;
+        }
+        return streams;
+    }
+
     protected final void initializeLogging() {
         System.setProperty("java.util.logging.SimpleFormatter.format",
                 "%1$tH:%1$tM:%1$tS:%1$tL %4$-7.7s %2$-80.80s %5$s%6$s%n");
@@ -391,6 +438,20 @@ public abstract class ChaincodeBase implements Chaincode {
         return this.props;
     }
 
+    /**
+     * Whether the named function only reads the ledger.
+     *
+     * When TP_SCHEDULER=priority is set in config.props, transactions calling
+     * such functions are run ahead of those that may write. This is asked once
+     * for each function name, before the transaction is run.
+     *
+     * @param function The function name, the first argument of the transaction
+     * @return false, unless overridden
+     */
+    public boolean isQueryFunction(final String function) {
+        return false;
+    }
+
     @SuppressWarnings("deprecation")
     final ManagedChannelBuilder<?> newChannelBuilder() throws IOException {
 
@@ -406,11 +467,31 @@ public abstract class ChaincodeBase implements Chaincode {
             builder.usePlaintext();
         }
 
-        // there is a optional in GRPC to use 'directExecutor' rather than the inbuilt
-        // gRPC thread management
-        // not seen to make a marked difference in performance.
-        // However if it ever does, then this is where it should be enabled
-        return builder;
+        // Ping the peer when the connection has been quiet for a while, so that a
+        // lost connection fails the stream in seconds rather than minutes. The
+        // peer by default refuses pings more often than every 60 seconds
+        final Properties props = getChaincodeConfig();
+        final long keepAliveTime = Long.parseLong((String) props.getOrDefault("CHAINCODE_GRPC_KEEPALIVE_TIME_MS", "60000"));
+        final long keepAliveTimeout = Long.parseLong((String) props.getOrDefault("CHAINCODE_GRPC_KEEPALIVE_TIMEOUT_MS", "20000"));
+        LOGGER.info(() -> "gRPC Keepalive Time [CHAINCODE_GRPC_KEEPALIVE_TIME_MS]" + keepAliveTime);
+        LOGGER.info(() -> "gRPC Keepalive Timeout [CHAINCODE_GRPC_KEEPALIVE_TIMEOUT_MS]" + keepAliveTimeout);
+        if (keepAliveTime > 0) {
+            builder.keepAliveTime(keepAliveTime, TimeUnit.MILLISECONDS);
+            builder.keepAliveTimeout(keepAliveTimeout, TimeUnit.MILLISECONDS);
+        }
+
+        // event loops, executor, buffers and limits, as configured; the same
+        // settings, and event loop threads, for every connection
+        return getTransport(props).configure(builder);
+    }
+
+    // Channels are built from the threads reconnecting each stream, so only one
+    // may create the transport
+    private synchronized NettyTransport getTransport(final Properties props) {
+        if (transport == null) {
+            transport = new NettyTransport(props);
+        }
+        return transport;
     }
 
     final SslContext createSSLContext() throws IOException {
@@ -13,6 +13,7 @@ import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage.ChaincodeEvent;
 import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
@@ -20,6 +21,7 @@ import org.hyperledger.fabric.shim.Chaincode.Response;
 import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyModification;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.PagedQueryResults;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 
@@ -120,13 +122,53 @@ public interface ChaincodeStub {
      * <p>
      * Note that getState doesn't read data from the writeset, which has not been
      * committed to the ledger. In other words, GetState doesn't consider data
-     * modified by PutState that has not been committed.
+     * modified by PutState that has not been committed. This changes if
+     * <code>CHAINCODE_STATE_CACHE_ENABLED=true</code> is set in config.props: the
+     * chaincode then remembers the values a transaction has read and written, and
+     * getState returns the value from an earlier PutState or DelState in the same
+     * transaction.
      *
      * @param key name of the value
      * @return value the value read from the ledger
      */
     byte[] getState(String key);
 
+    /**
+     * Returns the value of the specified <code>key</code> from the ledger, without
+     * waiting for the peer to respond.
+     * <p>
+     * A transaction can make several of these requests and then wait for them
+     * together, rather than waiting for each in turn. The chaincode still sends
+     * requests for a transaction to the peer one at a time, as the peer has no way
+     * to say which request a response is for, so this saves the time spent in the
+     * chaincode between calls rather than the round trips themselves.
+     * <p>
+     * The returned future is completed on a thread kept for the purpose, not the
+     * one handling communication from the peer, so continuations attached to it
+     * may block or call other stub methods.
+     *
+     * @param key name of the value
+     * @return future completed with the value read from the ledger
+     * @see #getState(String)
+     */
+    default CompletableFuture<byte[]> getStateAsync(final String key) {
+        return CompletableFuture.completedFuture(getState(key));
+    }
+
+    /**
+     * Returns the values of the specified <code>keys</code> from the ledger.
+     * <p>
+     * All of the requests are made before waiting for any of the responses, see
+     * {@link #getStateAsync(String)}.
+     *
+     * @param keys names of the values
+     * @return the values read from the ledger, in the same order as the keys
+     */
+    default List<byte[]> getStates(final List<String> keys) {
+        final List<CompletableFuture<byte[]>> values = keys.stream().map(this::getStateAsync).collect(toList());
+        return values.stream().map(CompletableFuture::join).collect(toList());
+    }
+
     /**
      * retrieves the key-level endorsement policy for <code>key</code>. Note that
      * this will introduce a read dependency on <code>key</code> in the
@@ -213,6 +255,43 @@ public interface ChaincodeStub {
      */
     QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(String startKey, String endKey, int pageSize, String bookmark);
 
+    /**
+     * Returns all the keys in a range, and their values, as
+     * {@link #getStateByRangeWithPagination(String, String, int, String)} does a
+     * page at a time. Each page is asked for with the bookmark from the one
+     * before, and where supported is fetched while the chaincode works through
+     * the one before.
+     *
+     * @param startKey the start key
+     * @param endKey   the end key
+     * @param pageSize the page size
+     * @return QueryIterator
+     */
+    default PagedQueryResults getStateByRangeAllPages(final String startKey, final String endKey, final int pageSize) {
+        return getStateByRangeAllPages(startKey, endKey, pageSize, "", 0, 0);
+    }
+
+    /**
+     * Returns the keys in a range, and their values, a page at a time as
+     * {@link #getStateByRangeAllPages(String, String, int)} does, stopping early
+     * at a budget of records or bytes of values. The bookmark from
+     * {@link PagedQueryResults#getBookmark()} carries on from where it stopped.
+     *
+     * @param startKey   the start key
+     * @param endKey     the end key
+     * @param pageSize   the page size
+     * @param bookmark   the bookmark to start from, or empty
+     * @param maxRecords most records to return, 0 for no limit
+     * @param maxBytes   bytes of values after which no more pages are returned,
+     *                   0 for no limit
+     * @return QueryIterator
+     */
+    default PagedQueryResults getStateByRangeAllPages(final String startKey, final String endKey, final int pageSize, final String bookmark,
+            final long maxRecords, final long maxBytes) {
+        return new PagedQueryResults((b, size) -> () -> getStateByRangeWithPagination(startKey, endKey, size, b), pageSize, bookmark, maxRecords,
+                maxBytes);
+    }
+
     /**
      * Returns all existing keys, and their values, that are prefixed by the
      * specified partial {@link CompositeKey}.
@@ -357,6 +436,40 @@ public interface ChaincodeStub {
      */
     QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(String query, int pageSize, String bookmark);
 
+    /**
+     * Returns all the results of a rich query, as
+     * {@link #getQueryResultWithPagination(String, int, String)} does a page at a
+     * time. Each page is asked for with the bookmark from the one before, and
+     * where supported is fetched while the chaincode works through the one
+     * before.
+     *
+     * @param query    the query
+     * @param pageSize the page size
+     * @return QueryIterator
+     */
+    default PagedQueryResults getQueryResultAllPages(final String query, final int pageSize) {
+        return getQueryResultAllPages(query, pageSize, "", 0, 0);
+    }
+
+    /**
+     * Returns the results of a rich query a page at a time as
+     * {@link #getQueryResultAllPages(String, int)} does, stopping early at a
+     * budget of records or bytes of values. The bookmark from
+     * {@link PagedQueryResults#getBookmark()} carries on from where it stopped.
+     *
+     * @param query      the query
+     * @param pageSize   the page size
+     * @param bookmark   the bookmark to start from, or empty
+     * @param maxRecords most records to return, 0 for no limit
+     * @param maxBytes   bytes of values after which no more pages are returned,
+     *                   0 for no limit
+     * @return QueryIterator
+     */
+    default PagedQueryResults getQueryResultAllPages(final String query, final int pageSize, final String bookmark, final long maxRecords,
+            final long maxBytes) {
+        return new PagedQueryResults((b, size) -> () -> getQueryResultWithPagination(query, size, b), pageSize, bookmark, maxRecords, maxBytes);
+    }
+
     /**
      * Returns a history of key values across time.
      * <p>
@@ -379,7 +492,8 @@ public interface ChaincodeStub {
      * <code>collection</code>. In other words,
      * {@link #getPrivateData(String, String)} doesn't consider data modified by
      * {@link #putPrivateData(String, String, byte[])} * that has not been
-     * committed.
+     * committed. As with {@link #getState(String)}, this changes if
+     * <code>CHAINCODE_STATE_CACHE_ENABLED=true</code> is set.
      *
      * @param collection name of the collection
      * @param key        name of the value
@@ -387,6 +501,34 @@ public interface ChaincodeStub {
      */
     byte[] getPrivateData(String collection, String key);
 
+    /**
+     * Returns the value of the specified <code>key</code> from the specified
+     * <code>collection</code>, without waiting for the peer to respond.
+     *
+     * @param collection name of the collection
+     * @param key        name of the value
+     * @return future completed with the value read from the collection
+     * @see #getStateAsync(String)
+     * @see #getPrivateData(String, String)
+     */
+    default CompletableFuture<byte[]> getPrivateDataAsync(final String collection, final String key) {
+        return CompletableFuture.completedFuture(getPrivateData(collection, key));
+    }
+
+    /**
+     * Returns the values of the specified <code>keys</code> from the specified
+     * <code>collection</code>.
+     *
+     * @param collection name of the collection
+     * @param keys       names of the values
+     * @return the values read from the collection, in the same order as the keys
+     * @see #getStates(List)
+     */
+    default List<byte[]> getPrivateDataMultipleKeys(final String collection, final List<String> keys) {
+        final List<CompletableFuture<byte[]>> values = keys.stream().map(key -> getPrivateDataAsync(collection, key)).collect(toList());
+        return values.stream().map(CompletableFuture::join).collect(toList());
+    }
+
     /**
      * @param collection name of the collection
      * @param key        name of the value
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.metrics.MetricsProvider;
+import org.hyperledger.fabric.metrics.PoolSizeChange;
+import org.hyperledger.fabric.metrics.TaskMetricsCollector;
+
+/**
+ * Periodically resizes the thread pool that transactions run on.
+ *
+ * A thread running a transaction spends much of its time waiting for the peer
+ * to respond to stub calls. If tasks spend a fraction W of their time waiting,
+ * it takes processors / (1 - W) threads to keep every processor busy. The pool
+ * is grown towards that size when tasks are queueing for a thread, and shrunk
+ * a thread at a time when they are not, always within the bounds configured.
+ */
+public final class AdaptivePoolSizer {
+    private static Logger logger = Logger.getLogger(AdaptivePoolSizer.class.getName());
+
+    // Tasks that do nothing but wait would otherwise ask for unlimited threads
+    private static final double MAX_WAIT_FRACTION = 0.95;
+
+    private final InvocationTaskExecutor executor;
+    private final TaskMetricsCollector tasks;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final MetricsProvider metrics;
+    private final int processors;
+
+    // Totals for the tasks completed since the last adjustment
+    private final LongAdder runTime = new LongAdder();
+    private final LongAdder waitTime = new LongAdder();
+    private double waitFraction;
+
+    private Timer timer;
+
+    /**
+     *
+     * @param executor    The thread pool to resize
+     * @param tasks       To find how many tasks are waiting for a thread
+     * @param minPoolSize Smallest size for the pool
+     * @param maxPoolSize Largest size for the pool
+     * @param metrics     Told of each change made
+     */
+    public AdaptivePoolSizer(final InvocationTaskExecutor executor, final TaskMetricsCollector tasks, final int minPoolSize, final int maxPoolSize,
+            final MetricsProvider metrics) {
+        this(executor, tasks, minPoolSize, maxPoolSize, metrics, Runtime.getRuntime().availableProcessors());
+    }
+
+    AdaptivePoolSizer(final InvocationTaskExecutor executor, final TaskMetricsCollector tasks, final int minPoolSize, final int maxPoolSize,
+            final MetricsProvider metrics, final int processors) {
+        if (minPoolSize <= 0 || maxPoolSize < minPoolSize) {
+            throw new IllegalArgumentException();
+        }
+        this.executor = executor;
+        this.tasks = tasks;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.metrics = metrics;
+        this.processors = processors;
+    }
+
+    /**
+     * Record the times taken by a completed task.
+     *
+     * @param taskRunTime  how long the task ran for, in nanoseconds
+     * @param taskWaitTime how long of that it spent waiting for the peer, in
+     *                     nanoseconds
+     */
+    public void recordTask(final long taskRunTime, final long taskWaitTime) {
+        runTime.add(taskRunTime);
+        waitTime.add(taskWaitTime);
+    }
+
+    /**
+     * Start adjusting the pool size.
+     *
+     * @param interval time between adjustments, in milliseconds
+     */
+    public void start(final long interval) {
+        timer = new Timer("fabric-poolsizer", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                adjust();
+            }
+        }, interval, interval);
+        logger.info(() -> String.format("Adaptive pool sizing started, between %d and %d threads", minPoolSize, maxPoolSize));
+    }
+
+    /**
+     * Stop adjusting the pool size.
+     */
+    public void stop() {
+        if (timer != null) {
+            timer.cancel();
+        }
+    }
+
+    /**
+     * Resize the pool based on what has been seen since the last call.
+     *
+     * @return the new pool size
+     */
+    int adjust() {
+        final long run = runTime.sumThenReset();
+        final long wait = waitTime.sumThenReset();
+        // with no tasks completed, stay with the last estimate
+        if (run > 0) {
+            waitFraction = Math.min(MAX_WAIT_FRACTION, (double) wait / run);
+        }
+
+        final int current = executor.getCorePoolSize();
+        final int queued = tasks.getCurrentQueueCount();
+        final int target = bound((int) Math.ceil(processors / (1 - waitFraction)));
+
+        final int size;
+        if (queued > 0 && target > current) {
+            size = Math.min(target, current + queued);
+        } else if (queued == 0 && target < current) {
+            size = current - 1;
+        } else {
+            size = bound(current);
+        }
+
+        if (size != current) {
+            // the pool only grows beyond the core size once the queue is full, but
+            // the maximum must never be less than the core size
+            if (size > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(size);
+            }
+            executor.setCorePoolSize(size);
+
+            final PoolSizeChange change = new PoolSizeChange(current, size, queued, waitFraction);
+            logger.fine(() -> "Pool resized " + change);
+            metrics.poolSizeChanged(change);
+        }
+        return size;
+    }
+
+    private int bound(final int size) {
+        return Math.max(minPoolSize, Math.min(maxPoolSize, size));
+    }
+}
@@ -9,16 +9,28 @@ import static org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.
 import static org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type.ERROR;
 import static org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type.RESPONSE;
 
+import java.util.Queue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Exchanger;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 import org.hyperledger.fabric.Logging;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type;
 import org.hyperledger.fabric.shim.Chaincode;
-import org.hyperledger.fabric.shim.ChaincodeStub;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
@@ -33,13 +45,55 @@ public class ChaincodeInvocationTask implements Callable<ChaincodeMessage> {
     private static Logger logger = Logger.getLogger(ChaincodeInvocationTask.class.getName());
     private static Logger perflogger = Logger.getLogger(Logging.PERFLOGGER);
 
-    private final String key;
+    private final TxKey key;
     private final Type type;
     private final String txId;
     private final Consumer<ChaincodeMessage> outgoingMessageConsumer;
+    // Requests for this transaction that have not had a response yet, in the
+    // order they were made. The peer's responses carry nothing but the txid to
+    // match them with, so only the request at the head is sent to the peer; the
+    // next is sent when its response arrives.
+    //
+    // Requests can be added from any thread, but are only removed by the thread
+    // handling the responses from the peer. A request is always added to the
+    // queue before the count is incremented, and removed before it's
+    // decremented. So whichever thread moves the count away from zero sends the
+    // head of the queue, and the count never hits zero with a request unsent.
+    private final Queue<PendingRequest> pendingRequests = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // The response to a request made by invoke() on the thread running the
+    // chaincode, with no other requests outstanding, is handed over directly;
+    // the thread handling the responses meets the waiting transaction thread,
+    // which then runs straight away. That holds up the responses to other
+    // transactions though, so is only done when allowed
     private final Exchanger<ChaincodeMessage> messageExchange = new Exchanger<>();
+    private static final long HANDOFF_WAIT = 10;
+    private BooleanSupplier exchangeAllowed = () -> true;
+    // Completes the futures handed to the chaincode, so that what it does on
+    // completion doesn't hold up the thread handling the responses
+    private Executor callbackExecutor = ForkJoinPool.commonPool();
     private final ChaincodeMessage message;
     private final Chaincode chaincode;
+    private final boolean stateCacheEnabled;
+    private final boolean writeBufferEnabled;
+    // How long to wait for each response from the peer, 0 for no limit
+    private final long stubTimeout;
+    // Results left in a page of a query when the next page is asked for, 0 to
+    // wait until the page is used up
+    private int queryPrefetch;
+
+    // Set once the final message for the transaction has been sent to the peer,
+    // so that it is only sent once, either when the chaincode returns or when
+    // the transaction is cancelled
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile ChaincodeMessage cancelMessage;
+    // The thread running the chaincode, guarded by this
+    private Thread runner;
+
+    // How long the task ran for, and how much of that it spent waiting for the
+    // peer to respond
+    private volatile long runTime;
+    private final LongAdder waitTime = new LongAdder();
 
     /**
      *
@@ -53,13 +107,57 @@ public class ChaincodeInvocationTask implements Callable<ChaincodeMessage> {
      */
     public ChaincodeInvocationTask(final ChaincodeMessage message, final Type type, final Consumer<ChaincodeMessage> outgoingMessage,
             final Chaincode chaincode) {
+        this(message, type, outgoingMessage, chaincode, false, false);
+    }
+
+    /**
+     *
+     * @param message            The incoming message that has triggered this task
+     *                           into execution
+     * @param type               Is this init or invoke? (v2 Fabric deprecates
+     *                           init)
+     * @param outgoingMessage    The Consumer functional interface to send any
+     *                           requests for ledger state
+     * @param chaincode          A instance of the end users chaincode
+     * @param stateCacheEnabled  Should the stub remember the state this
+     *                           transaction has read and written
+     * @param writeBufferEnabled Should the stub hold back writes until the
+     *                           chaincode has returned
+     */
+    public ChaincodeInvocationTask(final ChaincodeMessage message, final Type type, final Consumer<ChaincodeMessage> outgoingMessage,
+            final Chaincode chaincode, final boolean stateCacheEnabled, final boolean writeBufferEnabled) {
+        this(message, type, outgoingMessage, chaincode, stateCacheEnabled, writeBufferEnabled, 0);
+    }
 
-        this.key = message.getChannelId() + message.getTxid();
+    /**
+     *
+     * @param message            The incoming message that has triggered this task
+     *                           into execution
+     * @param type               Is this init or invoke? (v2 Fabric deprecates
+     *                           init)
+     * @param outgoingMessage    The Consumer functional interface to send any
+     *                           requests for ledger state
+     * @param chaincode          A instance of the end users chaincode
+     * @param stateCacheEnabled  Should the stub remember the state this
+     *                           transaction has read and written
+     * @param writeBufferEnabled Should the stub hold back writes until the
+     *                           chaincode has returned
+     * @param stubTimeout        Milliseconds to wait for each response from the
+     *                           peer before the transaction is cancelled, 0 to
+     *                           wait for ever
+     */
+    public ChaincodeInvocationTask(final ChaincodeMessage message, final Type type, final Consumer<ChaincodeMessage> outgoingMessage,
+            final Chaincode chaincode, final boolean stateCacheEnabled, final boolean writeBufferEnabled, final long stubTimeout) {
+
+        this.key = TxKey.of(message);
         this.type = type;
         this.outgoingMessageConsumer = outgoingMessage;
         this.txId = message.getTxid();
         this.chaincode = chaincode;
         this.message = message;
+        this.stateCacheEnabled = stateCacheEnabled;
+        this.writeBufferEnabled = writeBufferEnabled;
+        this.stubTimeout = stubTimeout;
     }
 
     /**
@@ -68,6 +166,16 @@ public class ChaincodeInvocationTask implements Callable<ChaincodeMessage> {
     @Override
     public ChaincodeMessage call() {
         ChaincodeMessage finalResponseMessage;
+        final long start = System.nanoTime();
+
+        synchronized (this) {
+            if (finished.get()) {
+                // cancelled while waiting to run
+                logger.warning(() -> String.format("[%-8.8s] Cancelled before it started", txId));
+                return cancelMessage;
+            }
+            runner = Thread.currentThread();
+        }
 
         try {
             perflogger.fine(() -> "> taskStart " + this.txId);
@@ -78,7 +186,7 @@ public class ChaincodeInvocationTask implements Callable<ChaincodeMessage> {
             //
             // This needs to be passed the message triggering the invoke, as well
             // as the interface to be used for sending any requests to the peer
-            final ChaincodeStub stub = new InvocationStubImpl(message, this);
+            final InvocationStubImpl stub = new InvocationStubImpl(message, this, stateCacheEnabled, writeBufferEnabled, queryPrefetch);
 
             // result is what will be sent to the peer as a response to this invocation
             final Chaincode.Response result;
@@ -91,6 +199,10 @@ public class ChaincodeInvocationTask implements Callable<ChaincodeMessage> {
                 result = chaincode.invoke(stub);
             }
 
+            // The chaincode may have returned without waiting for all of its
+            // asynchronous requests
+            awaitPendingRequests();
+
             if (result.getStatus().getCode() >= Chaincode.Response.Status.INTERNAL_SERVER_ERROR.getCode()) {
                 // Send ERROR with entire result.Message as payload
                 logger.severe(
@@ -98,6 +210,10 @@ public class ChaincodeInvocationTask implements Callable<ChaincodeMessage> {
                 finalResponseMessage = ChaincodeMessageFactory.newErrorEventMessage(message.getChannelId(), message.getTxid(), result.getMessage(),
                         stub.getEvent());
             } else {
+                // Any writes the chaincode has made must reach the peer before it is told
+                // the transaction is complete
+                stub.flushWrites();
+
                 // Send COMPLETED with entire result as payload
                 logger.fine(() -> String.format("[%-8.8s] Invoke succeeded. Sending %s", message.getTxid(), COMPLETED));
                 finalResponseMessage = ChaincodeMessageFactory.newCompletedEventMessage(message.getChannelId(), message.getTxid(), result, stub.getEvent());
@@ -108,22 +224,138 @@ public class ChaincodeInvocationTask implements Callable<ChaincodeMessage> {
             finalResponseMessage = ChaincodeMessageFactory.newErrorEventMessage(message.getChannelId(), message.getTxid(), e);
         }
 
-        // send the final response message to the peer
-        outgoingMessageConsumer.accept(finalResponseMessage);
+        synchronized (this) {
+            runner = null;
+            // don't leave an interrupt from cancel() for the thread's next task
+            Thread.interrupted();
+        }
+
+        // send the final response message to the peer, unless the transaction has
+        // been cancelled and the peer already told
+        if (finished.compareAndSet(false, true)) {
+            outgoingMessageConsumer.accept(finalResponseMessage);
+        } else {
+            logger.warning(() -> String.format("[%-8.8s] Cancelled, result of chaincode discarded", txId));
+            finalResponseMessage = cancelMessage;
+        }
+        runTime = System.nanoTime() - start;
 
         // also return for reference
         return finalResponseMessage;
     }
 
+    /**
+     * Abandon the transaction, if the final message for it hasn't yet been sent
+     * to the peer. The peer is sent an ERROR, outstanding requests fail, and the
+     * thread running the chaincode is interrupted.
+     *
+     * Java can't stop a thread, so if the chaincode ignores all of that it keeps
+     * the thread until it returns, but whatever it returns is discarded.
+     *
+     * @param reason Why, sent to the peer
+     * @return true if the transaction was cancelled, false if it had already
+     *         finished
+     */
+    public boolean cancel(final String reason) {
+        final ChaincodeMessage error = ChaincodeMessageFactory.newErrorEventMessage(message.getChannelId(), txId, reason);
+        synchronized (this) {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+            cancelMessage = error;
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+
+        logger.severe(() -> String.format("[%-8.8s] Transaction cancelled. Sending %s: %s", txId, ERROR, reason));
+        final RuntimeException cause = new RuntimeException(String.format("[%-8.8s]Transaction cancelled: %s", txId, reason));
+        pendingRequests.forEach(pending -> pending.response.completeExceptionally(cause));
+        outgoingMessageConsumer.accept(error);
+        return true;
+    }
+
+    /**
+     *
+     * @return true if the transaction has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelMessage != null;
+    }
+
     /**
      * Identifier of this task, channel id and transaction id.
      *
      * @return String
      */
     public String getTxKey() {
+        return this.key.toString();
+    }
+
+    /**
+     * Have query iterators ask the peer for the next page of results before the
+     * current one is used up.
+     *
+     * @param queryPrefetch Results left in the current page when the next is
+     *                      asked for, 0 to wait until it is used up
+     * @return this task
+     */
+    ChaincodeInvocationTask setQueryPrefetch(final int queryPrefetch) {
+        this.queryPrefetch = queryPrefetch;
+        return this;
+    }
+
+    /**
+     * Decide when the response to a request may be handed straight to the
+     * waiting transaction thread, which keeps the thread handling the responses
+     * waiting until it gets there.
+     *
+     * @param exchangeAllowed true when that holds up no other transaction
+     * @return this task
+     */
+    ChaincodeInvocationTask setExchangeAllowed(final BooleanSupplier exchangeAllowed) {
+        this.exchangeAllowed = exchangeAllowed;
+        return this;
+    }
+
+    /**
+     * Set the executor that completes the futures handed to the chaincode.
+     *
+     * @param callbackExecutor Runs what the chaincode does on completion
+     * @return this task
+     */
+    ChaincodeInvocationTask setCallbackExecutor(final Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        return this;
+    }
+
+    /**
+     * Identifier of this task, as used to find it for each message from the peer.
+     *
+     * @return TxKey
+     */
+    TxKey getKey() {
         return this.key;
     }
 
+    /**
+     * How long the task ran for, once it has completed.
+     *
+     * @return time in nanoseconds
+     */
+    public long getRunTime() {
+        return runTime;
+    }
+
+    /**
+     * How long the task spent waiting for responses from the peer.
+     *
+     * @return time in nanoseconds
+     */
+    public long getWaitTime() {
+        return waitTime.sum();
+    }
+
     /**
      * Use the Key as to determine equality.
      *
@@ -131,55 +363,206 @@ public class ChaincodeInvocationTask implements Callable<ChaincodeMessage> {
      * @return equality
      */
     public boolean equals(final ChaincodeInvocationTask task) {
-        return key.equals(task.getTxKey());
+        return key.equals(task.getKey());
     }
 
     /**
-     * Posts the message that the peer has responded with to this task's request
-     * Uses an 'Exchanger' concurrent lock; this lets two threads exchange values
-     * atomically.
+     * Posts the message that the peer has responded with to this task's oldest
+     * outstanding request, and sends the next request if there is one.
      *
-     * In this case the data is only passed to the executing tasks.
+     * This is called on the thread handling the communication from the peer, so
+     * only waits to hand a response to the transaction thread that is waiting
+     * for it, and not at all for the responses to asynchronous requests.
      *
      * @param msg Chaincode message to pass pack
-     * @throws InterruptedException should something really really go wrong
      */
-    public void postMessage(final ChaincodeMessage msg) throws InterruptedException {
-        messageExchange.exchange(msg);
+    public void postMessage(final ChaincodeMessage msg) {
+        final PendingRequest completed = pendingRequests.poll();
+        if (completed == null) {
+            logger.warning(() -> String.format("[%-8.8s] Unexpected %s received with no request outstanding", txId, msg.getType()));
+            return;
+        }
+
+        if (pendingCount.decrementAndGet() > 0) {
+            send(pendingRequests.peek().request);
+        }
+        if (completed.exchanged) {
+            handOff(msg);
+        } else {
+            completed.response.complete(msg);
+        }
+    }
+
+    private void handOff(final ChaincodeMessage msg) {
+        // the transaction thread is waiting, or about to, unless the transaction
+        // has finished or been cancelled in the meantime
+        try {
+            while (!finished.get()) {
+                try {
+                    messageExchange.exchange(msg, HANDOFF_WAIT, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (final TimeoutException e) {
+                    logger.fine(() -> String.format("[%-8.8s] Still waiting to hand over %s", txId, msg.getType()));
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
-     * Send the chaincode message back to the peer.
+     * Send the chaincode message back to the peer, and wait for the response.
      *
      * Implementation of the Functional interface 'InvokeChaincodeSupport'
      *
-     * It will send the message, via the outgoingMessageConsumer, and then block on
-     * the 'Exchanger' to wait for the response to come.
-     *
-     * This Exchange is an atomic operation between the thread that is running this
-     * task, and the thread that is handling the communication from the peer.
-     *
      * @param message The chaincode message from the peer
      * @return ByteString to be parsed by the caller
      *
      */
     protected ByteString invoke(final ChaincodeMessage message) {
+        if (pendingCount.get() == 0 && exchangeAllowed.getAsBoolean() && isRunner()) {
+            return handleResponse(exchange(message));
+        }
+        return handleResponse(join(request(message, false)));
+    }
 
-        // send the message
+    // Only the thread running the chaincode is interrupted by cancel(), so only
+    // it can wait on the exchange
+    private synchronized boolean isRunner() {
+        return runner == Thread.currentThread();
+    }
+
+    private ChaincodeMessage exchange(final ChaincodeMessage message) {
+        final CompletableFuture<ChaincodeMessage> cancelled = request(message, true);
+        if (cancelled.isDone()) {
+            return join(cancelled);
+        }
+
+        final long start = System.nanoTime();
+        try {
+            if (stubTimeout <= 0) {
+                return messageExchange.exchange(null);
+            }
+            return messageExchange.exchange(null, stubTimeout, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            logger.severe(() -> "Interrupted waiting for response ");
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(String.format("[%-8.8s]InterruptedException received.", txId), e);
+        } catch (final TimeoutException e) {
+            final String reason = String.format("No response from the peer within %dms", stubTimeout);
+            cancel(reason);
+            throw new RuntimeException(String.format("[%-8.8s]%s", txId, reason), e);
+        } finally {
+            waitTime.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Wait for the response to a request made with {@link #invokeAsync}, as
+     * {@link #invoke} would.
+     *
+     * @param <T>      Type of the response
+     * @param response As returned by invokeAsync
+     * @return the response
+     */
+    protected <T> T join(final CompletableFuture<T> response) {
+        final long start = System.nanoTime();
+        try {
+            return await(response);
+        } catch (final InterruptedException e) {
+            logger.severe(() -> "Interrupted waiting for response ");
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(String.format("[%-8.8s]InterruptedException received.", txId), e);
+        } catch (final ExecutionException e) {
+            throw new RuntimeException(String.format("[%-8.8s]Failed waiting for response.", txId), e.getCause());
+        } finally {
+            waitTime.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Send the chaincode message back to the peer, without waiting for the
+     * response.
+     *
+     * Requests made this way are still sent to the peer one at a time, in the
+     * order they were made, along with any made by {@link #invoke}. The returned
+     * future is completed on the thread handling communication from the peer, so
+     * must be passed through {@link #forChaincode} before the chaincode sees it.
+     *
+     * @param message The chaincode message from the peer
+     * @return future completed with the ByteString to be parsed by the caller
+     */
+    protected CompletableFuture<ByteString> invokeAsync(final ChaincodeMessage message) {
+        return request(message, false).thenApply(this::handleResponse);
+    }
+
+    /**
+     * The same result, completed on the callback executor rather than on the
+     * thread handling communication from the peer, so that the chaincode can
+     * block or call the stub in what it does on completion.
+     *
+     * @param <T>      Type of the response
+     * @param response As returned by invokeAsync
+     * @return future to hand to the chaincode
+     */
+    protected <T> CompletableFuture<T> forChaincode(final CompletableFuture<T> response) {
+        if (response.isDone()) {
+            return response;
+        }
+        return response.thenApplyAsync(Function.identity(), callbackExecutor);
+    }
+
+    private CompletableFuture<ChaincodeMessage> request(final ChaincodeMessage message, final boolean exchanged) {
+        final CompletableFuture<ChaincodeMessage> response = new CompletableFuture<>();
+        if (isCancelled()) {
+            response.completeExceptionally(new RuntimeException(String.format("[%-8.8s]Transaction cancelled", txId)));
+            return response;
+        }
+        pendingRequests.add(new PendingRequest(message, response, exchanged));
+        if (pendingCount.getAndIncrement() == 0) {
+            send(pendingRequests.peek().request);
+        }
+        return response;
+    }
+
+    private void send(final ChaincodeMessage message) {
         logger.info(() -> "Sending message to the peer " + message.getTxid());
         outgoingMessageConsumer.accept(message);
+    }
 
-        // wait for response
-        ChaincodeMessage response;
+    private void awaitPendingRequests() {
+        final long start = System.nanoTime();
         try {
-            response = messageExchange.exchange(null);
-            logger.info(() -> "Got response back from the peer" + response.getTxid());
+            PendingRequest pending;
+            while ((pending = pendingRequests.peek()) != null) {
+                await(pending.response);
+            }
         } catch (final InterruptedException e) {
-            logger.severe(() -> "Interrupted exchanging messages ");
+            Thread.currentThread().interrupt();
             throw new RuntimeException(String.format("[%-8.8s]InterruptedException received.", txId), e);
+        } catch (final ExecutionException e) {
+            throw new RuntimeException(String.format("[%-8.8s]Failed waiting for response.", txId), e.getCause());
+        } finally {
+            waitTime.add(System.nanoTime() - start);
+        }
+    }
+
+    private <T> T await(final CompletableFuture<T> response) throws InterruptedException, ExecutionException {
+        if (stubTimeout <= 0) {
+            return response.get();
+        }
+        try {
+            return response.get(stubTimeout, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            final String reason = String.format("No response from the peer within %dms", stubTimeout);
+            cancel(reason);
+            throw new RuntimeException(String.format("[%-8.8s]%s", txId, reason), e);
         }
+    }
+
+    private ByteString handleResponse(final ChaincodeMessage response) {
+        logger.info(() -> "Got response back from the peer" + response.getTxid());
 
-        // handle response
         switch (response.getType()) {
         case RESPONSE:
             logger.fine(() -> String.format("[%-8.8s] Successful response received.", txId));
@@ -192,7 +575,19 @@ public class ChaincodeInvocationTask implements Callable<ChaincodeMessage> {
             throw new RuntimeException(
                     String.format("[%-8.8s] Unexpected %s response received. Expected %s or %s.", txId, response.getType(), RESPONSE, ERROR));
         }
+    }
 
+    private static final class PendingRequest {
+        private final ChaincodeMessage request;
+        private final CompletableFuture<ChaincodeMessage> response;
+        // Handed over through the exchanger rather than the future
+        private final boolean exchanged;
+
+        PendingRequest(final ChaincodeMessage request, final CompletableFuture<ChaincodeMessage> response, final boolean exchanged) {
+            this.request = request;
+            this.response = response;
+            this.exchanged = exchanged;
+        }
     }
 
 }
@@ -6,7 +6,6 @@
 package org.hyperledger.fabric.shim.impl;
 
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 
@@ -17,11 +16,11 @@ import org.hyperledger.fabric.protos.peer.ChaincodeSupportGrpc.ChaincodeSupportS
 
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
-import io.grpc.stub.StreamObserver;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 
 public class ChaincodeSupportClient {
     private static Logger logger = Logger.getLogger(ChaincodeSupportClient.class.getName());
-    private static Logger perflogger = Logger.getLogger(Logging.PERFLOGGER);
 
     private final ManagedChannel channel;
     private final ChaincodeSupportStub stub;
@@ -57,11 +56,28 @@ public class ChaincodeSupportClient {
 
     }
 
+    // Shutting down waits for the transactions and the channel, which may need
+    // the thread the stream was closed on; with the direct executor that is an
+    // event loop thread shared by every channel. So wait on a thread of its own
+    private void shutdownLater(final InvocationTaskManager itm) {
+        new Thread(() -> shutdown(itm), "fabric-stream-shutdown").start();
+    }
+
     /**
      *
      * @param itm
      */
     public void start(final InvocationTaskManager itm) {
+        start(itm, () -> {
+        });
+    }
+
+    /**
+     *
+     * @param itm
+     * @param onStreamClosed Called once the stream has failed or completed
+     */
+    public void start(final InvocationTaskManager itm, final Runnable onStreamClosed) {
 
         // This is a critical method - it is the one time that a
         // protobuf service is invoked. The single 'register' call
@@ -83,13 +99,34 @@ public class ChaincodeSupportClient {
         // knowing if this is a new transaction function or the answer to say getState
         final Consumer<ChaincodeMessage> consumer = itm::onChaincodeMessage;
 
+        // Messages going to the peer, from whichever thread, are written one at
+        // a time, as the stream can take them
+        final OutboundMessageWriter writer = new OutboundMessageWriter();
+        writer.setFailureHandler(itm::sendFailed);
+
         logger.info("making the grpc call");
         // for any error - shut everything down
         // as this is long lived (well forever) then any completion means something
         // has stopped in the peer or the network comms, so also shutdown
-        final StreamObserver<ChaincodeMessage> requestObserver = this.stub.register(
+        this.stub.register(
+
+                new ClientResponseObserver<ChaincodeMessage, ChaincodeMessage>() {
+                    @Override
+                    public void beforeStart(final ClientCallStreamObserver<ChaincodeMessage> requestStream) {
+                        writer.setStream(requestStream);
+
+                        // Should the peer stop responding, fail the stream now rather
+                        // than when TCP eventually notices
+                        itm.setStreamCanceller(reason -> requestStream.cancel(reason, null));
+
+                        // Rather than reading messages as fast as they arrive, let the
+                        // ITM ask for each one when it is ready for it
+                        if (itm.isFlowControlEnabled()) {
+                            requestStream.disableAutoInboundFlowControl();
+                            itm.setMessageRequester(requestStream::request);
+                        }
+                    }
 
-                new StreamObserver<ChaincodeMessage>() {
                     @Override
                     public void onNext(final ChaincodeMessage chaincodeMessage) {
                         // message off to the ITM...
@@ -99,49 +136,29 @@ public class ChaincodeSupportClient {
                     @Override
                     public void onError(final Throwable t) {
                         logger.severe(() -> "An error occurred on the chaincode stream. Shutting down the chaincode stream." + Logging.formatError(t));
+                        writer.close(t);
 
-                        ChaincodeSupportClient.this.shutdown(itm);
+                        onStreamClosed.run();
+                        shutdownLater(itm);
                     }
 
                     @Override
                     public void onCompleted() {
                         logger.severe("Chaincode stream is complete. Shutting down the chaincode stream.");
-                        ChaincodeSupportClient.this.shutdown(itm);
+                        writer.close(new IllegalStateException("Chaincode stream is complete"));
+                        onStreamClosed.run();
+                        shutdownLater(itm);
                     }
                 }
 
         );
 
-        // Consumer function for response messages (those going back to the peer)
-        // gRPC streams need to be accessed by one thread at a time, so
-        // use a lock to protect this.
-        //
-        // Previous implementations used a dedicated thread for this. However this extra
-        // thread is not really required. The main thread executing the transaction will
-        // not be
-        // held up for long, nor can any one transaction invoke more that one stub api
-        // at a time.
-        final Consumer<ChaincodeMessage> c = new Consumer<ChaincodeMessage>() {
-
-            // create a lock, with fair property
-            private final ReentrantLock lock = new ReentrantLock(true);
-
-            @Override
-            public void accept(final ChaincodeMessage t) {
-                lock.lock();
-                perflogger.fine(() -> "> sendToPeer " + t.getTxid());
-                requestObserver.onNext(t);
-                perflogger.fine(() -> "< sendToPeer " + t.getTxid());
-                lock.unlock();
-            }
-        };
-
         // Pass a Consumer interface back to the the task manager. This is for tasks to
         // use to respond back to the peer.
         //
         // NOTE the register() - very important - as this triggers the ITM to send the
         // first message to the peer; otherwise the both sides will sit there waiting
-        itm.setResponseConsumer(c).register();
+        itm.setResponseConsumer(writer).register();
 
     }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+
+/**
+ * Watches for the stream from the peer going quiet when it shouldn't.
+ *
+ * A connection can be lost without either end being told, and then the stream
+ * only fails once TCP gives up, which can take minutes. Until then the
+ * transactions waiting on the peer hold their threads. So the stream is
+ * cancelled, and the chaincode shut down, if nothing has arrived from the peer
+ * for the idle timeout while a response from it is owed. And once the peer has
+ * been seen to send KEEPALIVE messages, if nothing has arrived at all for that
+ * long; set the timeout comfortably above the peer's keepalive interval.
+ *
+ * While reads from the peer are paused, to hold it back, messages it has sent
+ * are left unread, so the stream is not counted as idle.
+ */
+final class ConnectionHealthMonitor {
+    private static Logger logger = Logger.getLogger(ConnectionHealthMonitor.class.getName());
+
+    private final long idleTimeout;
+
+    private volatile long lastReceived = System.nanoTime();
+    private volatile boolean keepAliveSeen;
+    // Messages sent to the peer that it has not yet responded to
+    private final AtomicInteger owed = new AtomicInteger();
+    private volatile Consumer<String> canceller = reason -> {
+    };
+    private volatile boolean cancelled;
+    private volatile BooleanSupplier readsPaused = () -> false;
+
+    private Timer timer;
+
+    /**
+     *
+     * @param idleTimeout how long the peer may be silent, in milliseconds
+     */
+    ConnectionHealthMonitor(final long idleTimeout) {
+        if (idleTimeout <= 0) {
+            throw new IllegalArgumentException("Idle timeout must be positive");
+        }
+        this.idleTimeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+    }
+
+    /**
+     * Set the function that cancels the stream to the peer.
+     *
+     * @param canceller Called with the reason
+     */
+    void setCanceller(final Consumer<String> canceller) {
+        this.canceller = canceller;
+    }
+
+    /**
+     * Set how to tell whether reads from the peer are paused.
+     *
+     * @param readsPaused true while messages from the peer are not being read
+     */
+    void setReadsPaused(final BooleanSupplier readsPaused) {
+        this.readsPaused = readsPaused;
+    }
+
+    /**
+     * Called as each message arrives from the peer.
+     *
+     * @param message from the peer
+     */
+    void messageReceived(final ChaincodeMessage message) {
+        lastReceived = System.nanoTime();
+        if (message.getType() == ChaincodeMessage.Type.KEEPALIVE) {
+            keepAliveSeen = true;
+        } else if (InboundFlowControl.isResponse(message.getType())) {
+            owed.decrementAndGet();
+        }
+    }
+
+    /**
+     * Called as each message is sent to the peer.
+     *
+     * @param message to the peer
+     */
+    void messageSent(final ChaincodeMessage message) {
+        if (InboundFlowControl.expectsResponse(message.getType()) && owed.getAndIncrement() == 0) {
+            // the peer has had no reason to send anything until now
+            lastReceived = System.nanoTime();
+        }
+    }
+
+    /**
+     * Start checking the stream.
+     */
+    void start() {
+        final long interval = Math.max(1, TimeUnit.NANOSECONDS.toMillis(idleTimeout) / 2);
+        timer = new Timer("fabric-healthmonitor", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                check(System.nanoTime());
+            }
+        }, interval, interval);
+    }
+
+    /**
+     * Stop checking the stream.
+     */
+    void stop() {
+        if (timer != null) {
+            timer.cancel();
+        }
+    }
+
+    /**
+     * Cancel the stream if it has been idle too long.
+     *
+     * @param now current System.nanoTime()
+     * @return true if the stream was cancelled
+     */
+    boolean check(final long now) {
+        if (readsPaused.getAsBoolean()) {
+            // the idle time starts again once reads resume
+            lastReceived = now;
+            return false;
+        }
+        final long idle = now - lastReceived;
+        if (cancelled || idle < idleTimeout || !(keepAliveSeen || owed.get() > 0)) {
+            return false;
+        }
+
+        cancelled = true;
+        final String reason = String.format("Nothing received from the peer for %dms, with %d responses owed", TimeUnit.NANOSECONDS.toMillis(idle),
+                owed.get());
+        logger.severe(reason);
+        canceller.accept(reason);
+        return true;
+    }
+}
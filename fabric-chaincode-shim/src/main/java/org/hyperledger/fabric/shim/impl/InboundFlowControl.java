@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.metrics.TaskMetricsCollector;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+
+/**
+ * Decides when to read the next message from the peer, so that the peer is
+ * held back rather than transactions rejected when they are queueing.
+ *
+ * Messages are read one at a time. Once the number of transactions waiting for
+ * a thread reaches the high water mark reading stops, until it has dropped to
+ * the low water mark. The responses to the stub calls that running transactions
+ * have made come in on the same stream though, and those transactions can't
+ * finish without them. So while any responses are owed by the peer messages
+ * are still read, which may let a few more transactions in.
+ */
+final class InboundFlowControl {
+    private static Logger logger = Logger.getLogger(InboundFlowControl.class.getName());
+
+    private final TaskMetricsCollector tasks;
+    private final int highWater;
+    private final int lowWater;
+
+    // Messages asked for and not yet received; gRPC asks for the first when the
+    // stream starts
+    private final AtomicInteger demand = new AtomicInteger(1);
+    // Messages sent to the peer that it has not yet responded to
+    private final AtomicInteger owed = new AtomicInteger();
+    private volatile boolean paused;
+    private volatile IntConsumer requester = n -> {
+    };
+
+    /**
+     *
+     * @param tasks     To find how many transactions are waiting
+     * @param highWater Stop reading new transactions with this many waiting
+     * @param lowWater  Start again with this many waiting
+     */
+    InboundFlowControl(final TaskMetricsCollector tasks, final int highWater, final int lowWater) {
+        if (lowWater < 0 || highWater <= lowWater) {
+            throw new IllegalArgumentException("Low water mark must be less than high water mark");
+        }
+        this.tasks = tasks;
+        this.highWater = highWater;
+        this.lowWater = lowWater;
+    }
+
+    /**
+     * Set the function that asks for more messages from the peer.
+     *
+     * @param requester Called with the number of messages wanted
+     */
+    void setRequester(final IntConsumer requester) {
+        this.requester = requester;
+    }
+
+    /**
+     * Called as each message arrives from the peer, before it is handled.
+     *
+     * @param message from the peer
+     */
+    void messageReceived(final ChaincodeMessage message) {
+        demand.decrementAndGet();
+        if (isResponse(message.getType())) {
+            owed.decrementAndGet();
+        }
+    }
+
+    /**
+     * Called as each message is sent to the peer.
+     *
+     * @param message to the peer
+     * @param send    sends the message
+     */
+    void sendMessage(final ChaincodeMessage message, final Runnable send) {
+        // counted first, in case the response comes back before send returns
+        final boolean expectsResponse = expectsResponse(message.getType());
+        if (expectsResponse) {
+            owed.incrementAndGet();
+        }
+        send.run();
+        if (expectsResponse) {
+            readMore();
+        }
+    }
+
+    /**
+     * Ask for the next message from the peer, if it should be read and hasn't
+     * already been asked for. Called whenever anything that decides that may
+     * have changed.
+     */
+    void readMore() {
+        final int waiting = tasks.getCurrentQueueCount();
+        if (!paused && waiting >= highWater) {
+            paused = true;
+            logger.info(() -> String.format("%d transactions waiting, pausing reads from the peer", waiting));
+        } else if (paused && waiting <= lowWater) {
+            paused = false;
+            logger.info(() -> String.format("%d transactions waiting, resuming reads from the peer", waiting));
+        }
+
+        if ((!paused || owed.get() > 0) && demand.compareAndSet(0, 1)) {
+            requester.accept(1);
+        }
+    }
+
+    /**
+     *
+     * @return true if new transactions are not being read
+     */
+    boolean isPaused() {
+        return paused;
+    }
+
+    static boolean isResponse(final ChaincodeMessage.Type type) {
+        switch (type) {
+        case REGISTERED:
+        case RESPONSE:
+        case ERROR:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    static boolean expectsResponse(final ChaincodeMessage.Type type) {
+        switch (type) {
+        case COMPLETED:
+        case ERROR:
+        case KEEPALIVE:
+            return false;
+        default:
+            return true;
+        }
+    }
+}
@@ -18,11 +18,16 @@ import java.nio.ByteOrder;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -32,7 +37,6 @@ import org.hyperledger.fabric.protos.common.Common.Header;
 import org.hyperledger.fabric.protos.common.Common.HeaderType;
 import org.hyperledger.fabric.protos.common.Common.SignatureHeader;
 import org.hyperledger.fabric.protos.ledger.queryresult.KvQueryResult;
-import org.hyperledger.fabric.protos.ledger.queryresult.KvQueryResult.KV;
 import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeID;
 import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeInput;
 import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeSpec;
@@ -55,6 +59,7 @@ import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyModification;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.PagedQueryResults;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 
@@ -80,17 +85,41 @@ class InvocationStubImpl implements ChaincodeStub {
     private final byte[] binding;
     private ChaincodeEvent event;
 
+    // Values this transaction has already read or written, keyed by collection
+    // ("" for the world state) and then by key. A deleted key maps to an empty
+    // value, as that is what the peer returns for it. Null if caching is disabled.
+    // Asynchronous reads complete on another thread, hence the concurrent maps.
+    private final Map<String, Map<String, ByteString>> stateCache;
+
+    // Writes waiting to be sent to the peer when the transaction completes, in
+    // the order they were last made. Null if writes are sent straight away.
+    private final Map<List<String>, ChaincodeMessage> pendingWrites;
+
+    // Results left in a page when query iterators ask for the next, 0 for not
+    // until the page is used up
+    private final int queryPrefetch;
+
     /**
      *
      * @param message
      * @param handler
+     * @param stateCacheEnabled  serve repeated reads of a key, and reads of keys
+     *                           already written, from within this transaction
+     *                           rather than asking the peer again
+     * @param writeBufferEnabled hold writes back until {@link #flushWrites()}
+     * @param queryPrefetch      ask for the next page of query results when
+     *                           this many are left in the current one, 0 to
+     *                           wait until it is used up
      * @throws InvalidProtocolBufferException
      */
-    InvocationStubImpl(final ChaincodeMessage message, final ChaincodeInvocationTask handler)
-            throws InvalidProtocolBufferException {
+    InvocationStubImpl(final ChaincodeMessage message, final ChaincodeInvocationTask handler,
+            final boolean stateCacheEnabled, final boolean writeBufferEnabled, final int queryPrefetch) throws InvalidProtocolBufferException {
         this.channelId = message.getChannelId();
         this.txId = message.getTxid();
         this.handler = handler;
+        this.stateCache = stateCacheEnabled ? new ConcurrentHashMap<>() : null;
+        this.pendingWrites = writeBufferEnabled ? new LinkedHashMap<>() : null;
+        this.queryPrefetch = queryPrefetch;
         final ChaincodeInput input = ChaincodeInput.parseFrom(message.getPayload());
 
         this.args = Collections.unmodifiableList(input.getArgsList());
@@ -194,8 +223,92 @@ class InvocationStubImpl implements ChaincodeStub {
 
     @Override
     public byte[] getState(final String key) {
-        return this.handler.invoke(ChaincodeMessageFactory.newGetStateEventMessage(channelId, txId, "", key))
-                .toByteArray();
+        return getStateValue("", key).toByteArray();
+    }
+
+    private ByteString getStateValue(final String collection, final String key) {
+        if (stateCache == null) {
+            return this.handler.invoke(ChaincodeMessageFactory.newGetStateEventMessage(channelId, txId, collection, key));
+        }
+
+        final Map<String, ByteString> values = stateCache.computeIfAbsent(collection, c -> new ConcurrentHashMap<>());
+        ByteString value = values.get(key);
+        if (value == null) {
+            value = this.handler.invoke(ChaincodeMessageFactory.newGetStateEventMessage(channelId, txId, collection, key));
+            values.put(key, value);
+        } else {
+            LOGGER.fine(() -> String.format("[%-8.8s] Using cached value for %s", txId, key));
+        }
+        return value;
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getStateAsync(final String key) {
+        return this.handler.forChaincode(getStateValueAsync("", key));
+    }
+
+    @Override
+    public List<byte[]> getStates(final List<String> keys) {
+        return joinAll(keys.stream().map(key -> getStateValueAsync("", key)).collect(toList()));
+    }
+
+    // Waits as a single read would, within the stub timeout and giving up if
+    // interrupted; the futures aren't seen by the chaincode, so can complete on
+    // the thread handling the responses
+    private List<byte[]> joinAll(final List<CompletableFuture<byte[]>> values) {
+        return values.stream().map(this.handler::join).collect(toList());
+    }
+
+    private CompletableFuture<byte[]> getStateValueAsync(final String collection, final String key) {
+        final ChaincodeMessage msg = ChaincodeMessageFactory.newGetStateEventMessage(channelId, txId, collection, key);
+        if (stateCache == null) {
+            return this.handler.invokeAsync(msg).thenApply(ByteString::toByteArray);
+        }
+
+        final Map<String, ByteString> values = stateCache.computeIfAbsent(collection, c -> new ConcurrentHashMap<>());
+        final ByteString value = values.get(key);
+        if (value != null) {
+            LOGGER.fine(() -> String.format("[%-8.8s] Using cached value for %s", txId, key));
+            return CompletableFuture.completedFuture(value.toByteArray());
+        }
+
+        // a write made while this read was outstanding is newer, so mustn't be replaced
+        return this.handler.invokeAsync(msg).thenApply(v -> {
+            values.putIfAbsent(key, v);
+            return v.toByteArray();
+        });
+    }
+
+    private void write(final List<String> writeKey, final ChaincodeMessage msg) {
+        if (pendingWrites == null) {
+            this.handler.invoke(msg);
+        } else {
+            // only the last write to a key matters, so it replaces any earlier one
+            pendingWrites.remove(writeKey);
+            pendingWrites.put(writeKey, msg);
+        }
+    }
+
+    /**
+     * Send any writes that have been held back to the peer, in order. Needs to
+     * be called before the transaction is reported as complete.
+     */
+    void flushWrites() {
+        if (pendingWrites == null || pendingWrites.isEmpty()) {
+            return;
+        }
+
+        LOGGER.fine(() -> String.format("[%-8.8s] Sending %d buffered writes", txId, pendingWrites.size()));
+        for (final ChaincodeMessage msg : pendingWrites.values()) {
+            this.handler.invoke(msg);
+        }
+        pendingWrites.clear();
+    }
+
+    private void cacheStateValue(final String collection, final String key, final ByteString value) {
+        if (stateCache != null) {
+            stateCache.computeIfAbsent(collection, c -> new ConcurrentHashMap<>()).put(key, value);
+        }
     }
 
     @Override
@@ -225,22 +338,25 @@ class InvocationStubImpl implements ChaincodeStub {
     @Override
     public void putState(final String key, final byte[] value) {
         validateKey(key);
-        this.handler.invoke(
-                ChaincodeMessageFactory.newPutStateEventMessage(channelId, txId, "", key, ByteString.copyFrom(value)));
+        final ByteString bytes = ByteString.copyFrom(value);
+        write(Arrays.asList("", key), ChaincodeMessageFactory.newPutStateEventMessage(channelId, txId, "", key, bytes));
+        cacheStateValue("", key, bytes);
     }
 
     @Override
     public void setStateValidationParameter(final String key, final byte[] value) {
         validateKey(key);
+        final String metakey = TransactionPackage.MetaDataKeys.VALIDATION_PARAMETER.toString();
         final ChaincodeMessage msg = ChaincodeMessageFactory.newPutStateMetadataEventMessage(channelId, txId, "", key,
-                TransactionPackage.MetaDataKeys.VALIDATION_PARAMETER.toString(), ByteString.copyFrom(value));
-        this.handler.invoke(msg);
+                metakey, ByteString.copyFrom(value));
+        write(Arrays.asList("", key, metakey), msg);
     }
 
     @Override
     public void delState(final String key) {
         final ChaincodeMessage msg = ChaincodeMessageFactory.newDeleteStateEventMessage(channelId, txId, "", key);
-        this.handler.invoke(msg);
+        write(Arrays.asList("", key), msg);
+        cacheStateValue("", key, ByteString.EMPTY);
     }
 
     @Override
@@ -270,25 +386,45 @@ class InvocationStubImpl implements ChaincodeStub {
         final ByteString response = handler.invoke(requestMessage);
 
         return new QueryResultsIteratorImpl<KeyValue>(this.handler, channelId, txId, response,
-                queryResultBytesToKv.andThen(KeyValueImpl::new));
+                queryResultBytesToKeyValue, queryPrefetch);
 
     }
 
-    private final Function<QueryResultBytes, KV> queryResultBytesToKv = new Function<QueryResultBytes, KV>() {
-        @Override
-        public KV apply(final QueryResultBytes queryResultBytes) {
-            try {
-                return KV.parseFrom(queryResultBytes.getResultBytes());
-            } catch (final InvalidProtocolBufferException e) {
-                throw new RuntimeException(e);
-            }
-        }
-
-    };
+    // Each result is only decoded when the chaincode asks for its key or value
+    private final Function<QueryResultBytes, KeyValue> queryResultBytesToKeyValue = queryResultBytes -> new KeyValueImpl(
+            queryResultBytes.getResultBytes());
 
     @Override
     public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(final String startKey,
             final String endKey, final int pageSize, final String bookmark) {
+        return newQueryResultsWithMetadata(this.handler.invoke(newGetStateByRangeWithPaginationMessage(startKey, endKey, pageSize, bookmark)));
+    }
+
+    @Override
+    public PagedQueryResults getStateByRangeAllPages(final String startKey, final String endKey, final int pageSize,
+            final String bookmark, final long maxRecords, final long maxBytes) {
+        return new PagedQueryResults((b, size) -> askForPage(newGetStateByRangeWithPaginationMessage(startKey, endKey, size, b)), pageSize,
+                bookmark, maxRecords, maxBytes);
+    }
+
+    /**
+     * The page is asked for now, and waited for when the supplier is called.
+     *
+     * @param requestMessage query for the page
+     * @return the page once it arrives
+     */
+    private Supplier<QueryResultsIteratorWithMetadata<KeyValue>> askForPage(final ChaincodeMessage requestMessage) {
+        final CompletableFuture<ByteString> response = this.handler.invokeAsync(requestMessage);
+        return () -> newQueryResultsWithMetadata(this.handler.join(response));
+    }
+
+    private QueryResultsIteratorWithMetadata<KeyValue> newQueryResultsWithMetadata(final ByteString response) {
+        return new QueryResultsIteratorWithMetadataImpl<>(this.handler, channelId, txId, response, queryResultBytesToKeyValue,
+                queryPrefetch);
+    }
+
+    private ChaincodeMessage newGetStateByRangeWithPaginationMessage(final String startKey, final String endKey,
+            final int pageSize, final String bookmark) {
 
         String start = startKey;
         String end = endKey;
@@ -305,23 +441,21 @@ class InvocationStubImpl implements ChaincodeStub {
         final ChaincodeShim.QueryMetadata queryMetadata = ChaincodeShim.QueryMetadata.newBuilder().setBookmark(bookmark)
                 .setPageSize(pageSize).build();
 
-        return executeGetStateByRangeWithMetadata("", start, end, queryMetadata.toByteString());
+        return newGetStateByRangeWithMetadataMessage("", start, end, queryMetadata.toByteString());
     }
 
-    private QueryResultsIteratorWithMetadataImpl<KeyValue> executeGetStateByRangeWithMetadata(final String collection,
+    private QueryResultsIteratorWithMetadata<KeyValue> executeGetStateByRangeWithMetadata(final String collection,
             final String startKey, final String endKey, final ByteString metadata) {
+        return newQueryResultsWithMetadata(this.handler.invoke(newGetStateByRangeWithMetadataMessage(collection, startKey, endKey, metadata)));
+    }
+
+    private ChaincodeMessage newGetStateByRangeWithMetadataMessage(final String collection, final String startKey,
+            final String endKey, final ByteString metadata) {
 
         final ByteString payload = GetStateByRange.newBuilder().setCollection(collection).setStartKey(startKey)
                 .setEndKey(endKey).setMetadata(metadata).build().toByteString();
 
-        final ChaincodeMessage requestMessage = ChaincodeMessageFactory.newEventMessage(GET_STATE_BY_RANGE, channelId,
-                txId, payload);
-
-        final ByteString response = this.handler.invoke(requestMessage);
-
-        return new QueryResultsIteratorWithMetadataImpl<>(this.handler, getChannelId(), getTxId(), response,
-                queryResultBytesToKv.andThen(KeyValueImpl::new));
-
+        return ChaincodeMessageFactory.newEventMessage(GET_STATE_BY_RANGE, channelId, txId, payload);
     }
 
     @Override
@@ -397,24 +531,30 @@ class InvocationStubImpl implements ChaincodeStub {
         final ByteString response = handler.invoke(requestMessage);
 
         return new QueryResultsIteratorImpl<KeyValue>(this.handler, channelId, txId, response,
-                queryResultBytesToKv.andThen(KeyValueImpl::new));
+                queryResultBytesToKeyValue, queryPrefetch);
     }
 
     @Override
     public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(final String query,
             final int pageSize, final String bookmark) {
+        return newQueryResultsWithMetadata(handler.invoke(newGetQueryResultWithPaginationMessage(query, pageSize, bookmark)));
+    }
+
+    @Override
+    public PagedQueryResults getQueryResultAllPages(final String query, final int pageSize, final String bookmark,
+            final long maxRecords, final long maxBytes) {
+        return new PagedQueryResults((b, size) -> askForPage(newGetQueryResultWithPaginationMessage(query, size, b)), pageSize, bookmark,
+                maxRecords, maxBytes);
+    }
+
+    private ChaincodeMessage newGetQueryResultWithPaginationMessage(final String query, final int pageSize,
+            final String bookmark) {
 
         final ByteString queryMetadataPayload = ChaincodeShim.QueryMetadata.newBuilder().setBookmark(bookmark)
                 .setPageSize(pageSize).build().toByteString();
         final ByteString requestPayload = GetQueryResult.newBuilder().setCollection("").setQuery(query)
                 .setMetadata(queryMetadataPayload).build().toByteString();
-        final ChaincodeMessage requestMessage = ChaincodeMessageFactory.newEventMessage(GET_QUERY_RESULT, channelId,
-                txId, requestPayload);
-        final ByteString response = handler.invoke(requestMessage);
-
-        return new QueryResultsIteratorWithMetadataImpl<KeyValue>(this.handler, channelId, txId, response,
-                queryResultBytesToKv.andThen(KeyValueImpl::new));
-
+        return ChaincodeMessageFactory.newEventMessage(GET_QUERY_RESULT, channelId, txId, requestPayload);
     }
 
     @Override
@@ -427,7 +567,7 @@ class InvocationStubImpl implements ChaincodeStub {
         final ByteString response = handler.invoke(requestMessage);
 
         return new QueryResultsIteratorImpl<KeyModification>(this.handler, channelId, txId, response,
-                queryResultBytesToKeyModification.andThen(KeyModificationImpl::new));
+                queryResultBytesToKeyModification.andThen(KeyModificationImpl::new), queryPrefetch);
 
     }
 
@@ -446,8 +586,19 @@ class InvocationStubImpl implements ChaincodeStub {
     @Override
     public byte[] getPrivateData(final String collection, final String key) {
         validateCollection(collection);
-        return this.handler.invoke(ChaincodeMessageFactory.newGetStateEventMessage(channelId, txId, collection, key))
-                .toByteArray();
+        return getStateValue(collection, key).toByteArray();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getPrivateDataAsync(final String collection, final String key) {
+        validateCollection(collection);
+        return this.handler.forChaincode(getStateValueAsync(collection, key));
+    }
+
+    @Override
+    public List<byte[]> getPrivateDataMultipleKeys(final String collection, final List<String> keys) {
+        validateCollection(collection);
+        return joinAll(keys.stream().map(key -> getStateValueAsync(collection, key)).collect(toList()));
     }
 
     @Override
@@ -491,18 +642,20 @@ class InvocationStubImpl implements ChaincodeStub {
     public void putPrivateData(final String collection, final String key, final byte[] value) {
         validateKey(key);
         validateCollection(collection);
-        this.handler.invoke(ChaincodeMessageFactory.newPutStateEventMessage(channelId, txId, collection, key,
-                ByteString.copyFrom(value)));
+        final ByteString bytes = ByteString.copyFrom(value);
+        write(Arrays.asList(collection, key),
+                ChaincodeMessageFactory.newPutStateEventMessage(channelId, txId, collection, key, bytes));
+        cacheStateValue(collection, key, bytes);
     }
 
     @Override
     public void setPrivateDataValidationParameter(final String collection, final String key, final byte[] value) {
         validateKey(key);
         validateCollection(collection);
+        final String metakey = TransactionPackage.MetaDataKeys.VALIDATION_PARAMETER.toString();
         final ChaincodeMessage msg = ChaincodeMessageFactory.newPutStateMetadataEventMessage(channelId, txId,
-                collection, key, TransactionPackage.MetaDataKeys.VALIDATION_PARAMETER.toString(),
-                ByteString.copyFrom(value));
-        this.handler.invoke(msg);
+                collection, key, metakey, ByteString.copyFrom(value));
+        write(Arrays.asList(collection, key, metakey), msg);
     }
 
     @Override
@@ -510,7 +663,8 @@ class InvocationStubImpl implements ChaincodeStub {
         validateCollection(collection);
         final ChaincodeMessage msg = ChaincodeMessageFactory.newDeleteStateEventMessage(channelId, txId, collection,
                 key);
-        this.handler.invoke(msg);
+        write(Arrays.asList(collection, key), msg);
+        cacheStateValue(collection, key, ByteString.EMPTY);
     }
 
     @Override
@@ -577,7 +731,7 @@ class InvocationStubImpl implements ChaincodeStub {
         final ByteString response = handler.invoke(requestMessage);
 
         return new QueryResultsIteratorImpl<KeyValue>(this.handler, channelId, txId, response,
-                queryResultBytesToKv.andThen(KeyValueImpl::new));
+                queryResultBytesToKeyValue, queryPrefetch);
     }
 
     @Override
@@ -5,30 +5,46 @@
  */
 package org.hyperledger.fabric.shim.impl;
 
+import static org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type.KEEPALIVE;
 import static org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type.READY;
 import static org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type.REGISTERED;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
 import java.util.logging.Logger;
 
 import org.hyperledger.fabric.Logging;
 import org.hyperledger.fabric.metrics.Metrics;
+import org.hyperledger.fabric.metrics.TaskMetricsCollector;
 import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeID;
+import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeInput;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type;
 import org.hyperledger.fabric.shim.ChaincodeBase;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+
 /**
  * The InvocationTask Manager handles the message level communication with the
  * peer.
@@ -56,12 +72,14 @@ public final class InvocationTaskManager {
 
     // Keeping a map here of the tasks that are currently ongoing, and the key
     //
-    // Key = txid + channleid
+    // Key = channelid + txid
     // One task = one transaction invocation
-    private final ConcurrentHashMap<String, ChaincodeInvocationTask> innvocationTasks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<TxKey, ChaincodeInvocationTask> innvocationTasks = new ConcurrentHashMap<>();
 
     // Way to send back the events and data that make up the requests
     private Consumer<ChaincodeMessage> outgoingMessage;
+    private Runnable readyListener = () -> {
+    };
 
     // references to the chaincode, and the chaincode id
     private final ChaincodeBase chaincode;
@@ -73,11 +91,56 @@ public final class InvocationTaskManager {
     private final int corePoolSize;
     private final long keepAliveTime;
     private final TimeUnit unit = TimeUnit.MILLISECONDS;
-    private final BlockingQueue<Runnable> workQueue;
     private final ThreadFactory threadFactory = Executors.defaultThreadFactory();
     private final RejectedExecutionHandler handler = new ThreadPoolExecutor.AbortPolicy();
 
-    private final InvocationTaskExecutor taskService;
+    // Or instead a thread per task, with a cap on how many run at once
+    private final boolean virtualThreads;
+    private final int maxConcurrency;
+
+    private final ExecutorService taskService;
+
+    // Runs queries ahead of submits, and channels in turn, if enabled
+    private final TaskScheduler scheduler;
+    private final ConcurrentHashMap<ByteString, Boolean> queryFunctions = new ConcurrentHashMap<>();
+    private static final int MAX_QUERY_FUNCTIONS = 1024;
+
+    // Of the scheduler if there is one, otherwise of the executor
+    private final TaskMetricsCollector taskMetrics;
+
+    // Resizes the thread pool, if enabled
+    private final AdaptivePoolSizer poolSizer;
+
+    // Holds back messages from the peer while transactions are queueing, if
+    // enabled
+    private final InboundFlowControl flowControl;
+
+    // Cancels the stream if the peer stops responding, if enabled
+    private final ConnectionHealthMonitor healthMonitor;
+
+    // With several streams to the peer each registers separately, so has a
+    // state of its own; the chaincode is ready once any stream is
+    private final boolean streamState;
+    private volatile ChaincodeBase.CCState state = ChaincodeBase.CCState.CREATED;
+
+    // Transaction level settings
+    private final boolean stateCacheEnabled;
+    private final boolean writeBufferEnabled;
+    private final int queryPrefetch;
+
+    // Cancels transactions that take too long, if enabled
+    private final long txTimeout;
+    private final long stubTimeout;
+    private final ScheduledThreadPoolExecutor timeouts;
+
+    // Completes the futures the stub hands to the chaincode, as what the
+    // chaincode does then may block; not the task pool, where that could wait
+    // for a thread held by the transaction waiting on the future
+    private final ExecutorService callbacks = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "fabric-stub-callback");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * New InvocationTaskManager.
@@ -101,11 +164,183 @@ public final class InvocationTaskManager {
         logger.info(() -> "Core Pool Size [TP_QUEUE_SIZE]" + corePoolSize);
         logger.info(() -> "Keep Alive Time [TP_KEEP_ALIVE_MS]" + keepAliveTime);
 
-        workQueue = new LinkedBlockingQueue<Runnable>(queueSize);
-        taskService = new InvocationTaskExecutor(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+        virtualThreads = useVirtualThreads(props);
+        maxConcurrency = Integer.parseInt((String) props.getOrDefault("TP_MAX_CONCURRENCY", "100"));
+        logger.info(() -> "Executor [TP_EXECUTOR]" + (virtualThreads ? "virtual" : "pool"));
+        logger.info(() -> "Max Concurrency [TP_MAX_CONCURRENCY]" + maxConcurrency);
+
+        stateCacheEnabled = Boolean.parseBoolean((String) props.getOrDefault("CHAINCODE_STATE_CACHE_ENABLED", "false"));
+        logger.info(() -> "State Cache [CHAINCODE_STATE_CACHE_ENABLED]" + stateCacheEnabled);
+        writeBufferEnabled = Boolean.parseBoolean((String) props.getOrDefault("CHAINCODE_WRITE_BUFFER_ENABLED", "false"));
+        logger.info(() -> "Write Buffer [CHAINCODE_WRITE_BUFFER_ENABLED]" + writeBufferEnabled);
+        queryPrefetch = Integer.parseInt((String) props.getOrDefault("CHAINCODE_QUERY_PREFETCH", "0"));
+        logger.info(() -> "Query Prefetch [CHAINCODE_QUERY_PREFETCH]" + queryPrefetch);
+
+        txTimeout = Long.parseLong((String) props.getOrDefault("CHAINCODE_TX_TIMEOUT_MS", "0"));
+        stubTimeout = Long.parseLong((String) props.getOrDefault("CHAINCODE_STUB_TIMEOUT_MS", "0"));
+        logger.info(() -> "Transaction Timeout [CHAINCODE_TX_TIMEOUT_MS]" + txTimeout);
+        logger.info(() -> "Stub Call Timeout [CHAINCODE_STUB_TIMEOUT_MS]" + stubTimeout);
+        if (txTimeout > 0) {
+            timeouts = new ScheduledThreadPoolExecutor(1, runnable -> {
+                final Thread thread = new Thread(runnable, "fabric-txtimeout");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timeouts.setRemoveOnCancelPolicy(true);
+        } else {
+            timeouts = null;
+        }
+
+        final boolean adaptive = Boolean.parseBoolean((String) props.getOrDefault("TP_ADAPTIVE_ENABLED", "false"));
+        logger.info(() -> "Adaptive Pool Sizing [TP_ADAPTIVE_ENABLED]" + adaptive);
+
+        final String schedule = (String) props.getOrDefault("TP_SCHEDULER", "fifo");
+        logger.info(() -> "Scheduler [TP_SCHEDULER]" + schedule);
+
+        final TaskMetricsCollector executorMetrics;
+        final IntSupplier concurrency;
+        final InvocationTaskExecutor poolExecutor;
+        if (virtualThreads) {
+            final VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor(maxConcurrency, queueSize);
+            taskService = executor;
+            executorMetrics = executor;
+            concurrency = () -> maxConcurrency;
+            poolExecutor = null;
+        } else {
+            final BlockingQueue<Runnable> workQueue = new LinkedBlockingQueue<Runnable>(queueSize);
+            final InvocationTaskExecutor executor = new InvocationTaskExecutor(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue,
+                    threadFactory, handler);
+            taskService = executor;
+            executorMetrics = executor;
+            concurrency = executor::getCorePoolSize;
+            poolExecutor = executor;
+        }
 
-        Metrics.getProvider().setTaskMetricsCollector(taskService);
+        if ("priority".equalsIgnoreCase(schedule) || "channel".equalsIgnoreCase(schedule)) {
+            final int queryWeight = Integer.parseInt((String) props.getOrDefault("TP_QUERY_WEIGHT", "4"));
+            logger.info(() -> "Query Weight [TP_QUERY_WEIGHT]" + queryWeight);
+            if ("channel".equalsIgnoreCase(schedule)) {
+                // either can be set for a single channel, as TP_CHANNEL_WEIGHT.mychannel
+                final int channelLimit = channelSetting(props, "TP_CHANNEL_MAX_CONCURRENCY", Integer.toString(Integer.MAX_VALUE));
+                final int channelWeight = channelSetting(props, "TP_CHANNEL_WEIGHT", "1");
+                final Map<String, Integer> channelLimits = channelSettings(props, "TP_CHANNEL_MAX_CONCURRENCY");
+                final Map<String, Integer> channelWeights = channelSettings(props, "TP_CHANNEL_WEIGHT");
+                logger.info(() -> "Channel Max Concurrency [TP_CHANNEL_MAX_CONCURRENCY]" + channelLimit + " " + channelLimits);
+                logger.info(() -> "Channel Weight [TP_CHANNEL_WEIGHT]" + channelWeight + " " + channelWeights);
+                scheduler = new TaskScheduler(taskService, executorMetrics, concurrency, queueSize, queryWeight,
+                        channel -> channelLimits.getOrDefault(channel, channelLimit),
+                        channel -> channelWeights.getOrDefault(channel, channelWeight));
+            } else {
+                scheduler = new TaskScheduler(taskService, executorMetrics, concurrency, queueSize, queryWeight);
+            }
+            taskMetrics = scheduler;
+        } else {
+            scheduler = null;
+            taskMetrics = executorMetrics;
+        }
 
+        if (adaptive && poolExecutor == null) {
+            logger.warning("Adaptive pool sizing does not apply to the virtual thread executor");
+        }
+        poolSizer = adaptive && poolExecutor != null ? newPoolSizer(props, poolExecutor, taskMetrics) : null;
+
+        // reported together with those of any other streams, from registering
+        // until shut down
+        Metrics.getProvider().setTaskMetricsCollector(StreamTaskMetrics.getInstance());
+
+        final boolean flowControlEnabled = Boolean.parseBoolean((String) props.getOrDefault("CHAINCODE_FLOW_CONTROL_ENABLED", "false"));
+        logger.info(() -> "Flow Control [CHAINCODE_FLOW_CONTROL_ENABLED]" + flowControlEnabled);
+        if (flowControlEnabled) {
+            final int highWater = Integer.parseInt((String) props.getOrDefault("TP_QUEUE_HIGH_WATER", Integer.toString(queueSize / 2)));
+            final int lowWater = Integer.parseInt((String) props.getOrDefault("TP_QUEUE_LOW_WATER", Integer.toString(highWater / 2)));
+            logger.info(() -> "Queue High Water Mark [TP_QUEUE_HIGH_WATER]" + highWater);
+            logger.info(() -> "Queue Low Water Mark [TP_QUEUE_LOW_WATER]" + lowWater);
+            flowControl = new InboundFlowControl(taskMetrics, highWater, lowWater);
+        } else {
+            flowControl = null;
+        }
+
+        healthMonitor = newHealthMonitor(props, flowControl);
+
+        streamState = hasSeveralStreams(props);
+
+    }
+
+    private static boolean hasSeveralStreams(final Properties props) {
+        return Integer.parseInt((String) props.getOrDefault("CHAINCODE_GRPC_STREAMS", "1")) > 1
+                && Boolean.parseBoolean((String) props.getOrDefault("CHAINCODE_GRPC_STREAMS_EXPERIMENTAL", "false"));
+    }
+
+    private static ConnectionHealthMonitor newHealthMonitor(final Properties props, final InboundFlowControl flowControl) {
+        final long idleTimeout = Long.parseLong((String) props.getOrDefault("CHAINCODE_IDLE_TIMEOUT_MS", "0"));
+        logger.info(() -> "Peer Idle Timeout [CHAINCODE_IDLE_TIMEOUT_MS]" + idleTimeout);
+        if (idleTimeout <= 0) {
+            return null;
+        }
+        final ConnectionHealthMonitor monitor = new ConnectionHealthMonitor(idleTimeout);
+        // messages held back by flow control are not the peer going quiet
+        if (flowControl != null) {
+            monitor.setReadsPaused(flowControl::isPaused);
+        }
+        return monitor;
+    }
+
+    private AdaptivePoolSizer newPoolSizer(final Properties props, final InvocationTaskExecutor executor, final TaskMetricsCollector taskMetrics) {
+        final int minPoolSize = Integer.parseInt((String) props.getOrDefault("TP_ADAPTIVE_MIN_POOL_SIZE", Integer.toString(corePoolSize)));
+        final int maxPoolSize = Integer.parseInt((String) props.getOrDefault("TP_ADAPTIVE_MAX_POOL_SIZE", "50"));
+        final long interval = Long.parseLong((String) props.getOrDefault("TP_ADAPTIVE_INTERVAL_MS", "1000"));
+        logger.info(() -> "Adaptive Min Pool Size [TP_ADAPTIVE_MIN_POOL_SIZE]" + minPoolSize);
+        logger.info(() -> "Adaptive Max Pool Size [TP_ADAPTIVE_MAX_POOL_SIZE]" + maxPoolSize);
+        logger.info(() -> "Adaptive Interval [TP_ADAPTIVE_INTERVAL_MS]" + interval);
+
+        final AdaptivePoolSizer sizer = new AdaptivePoolSizer(executor, taskMetrics, minPoolSize, maxPoolSize, Metrics.getProvider());
+        sizer.start(interval);
+        return sizer;
+    }
+
+    private static boolean useVirtualThreads(final Properties props) {
+        if (!"virtual".equalsIgnoreCase((String) props.getOrDefault("TP_EXECUTOR", "pool"))) {
+            return false;
+        }
+        if (!VirtualThreadTaskExecutor.isAvailable()) {
+            logger.warning("Virtual threads are not available in this JVM, using the thread pool [TP_EXECUTOR]");
+            return false;
+        }
+        return true;
+    }
+
+    private static int channelSetting(final Properties props, final String key, final String defaultValue) {
+        final String value = (String) props.getOrDefault(key, defaultValue);
+        final int setting;
+        try {
+            setting = Integer.parseInt(value.trim());
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+        }
+        if (setting < 1) {
+            throw new IllegalArgumentException(key + " must be at least 1: " + value);
+        }
+        return setting;
+    }
+
+    /**
+     * Settings for single channels are all read up front, so that a bad one
+     * stops the chaincode starting rather than failing the channel's first
+     * transaction.
+     *
+     * @param props chaincode config
+     * @param key   setting, given for a channel as key.channel
+     * @return the setting for each channel it is given for
+     */
+    private static Map<String, Integer> channelSettings(final Properties props, final String key) {
+        final Map<String, Integer> settings = new HashMap<>();
+        final String prefix = key + ".";
+        for (final String name : props.stringPropertyNames()) {
+            if (name.startsWith(prefix) && name.length() > prefix.length()) {
+                settings.put(name.substring(prefix.length()), channelSetting(props, name, null));
+            }
+        }
+        return settings;
     }
 
     /**
@@ -115,32 +350,45 @@ public final class InvocationTaskManager {
      */
     public void onChaincodeMessage(final ChaincodeMessage chaincodeMessage) {
         logger.fine(() -> String.format("[%-8.8s] %s", chaincodeMessage.getTxid(), ChaincodeBase.toJsonString(chaincodeMessage)));
+        if (flowControl != null) {
+            flowControl.messageReceived(chaincodeMessage);
+        }
+        if (healthMonitor != null) {
+            healthMonitor.messageReceived(chaincodeMessage);
+        }
 
         try {
             final Type msgType = chaincodeMessage.getType();
-            switch (chaincode.getState()) {
-            case CREATED:
-                if (msgType == REGISTERED) {
-                    chaincode.setState(org.hyperledger.fabric.shim.ChaincodeBase.CCState.ESTABLISHED);
-                    logger.fine(() -> String.format("[%-8.8s] Received REGISTERED: moving to established state", chaincodeMessage.getTxid()));
-                } else {
-                    logger.warning(() -> String.format("[%-8.8s] Received %s: cannot handle", chaincodeMessage.getTxid(), msgType));
-                }
-                break;
-            case ESTABLISHED:
-                if (msgType == READY) {
-                    chaincode.setState(org.hyperledger.fabric.shim.ChaincodeBase.CCState.READY);
-                    logger.fine(() -> String.format("[%-8.8s] Received READY: ready for invocations", chaincodeMessage.getTxid()));
-                } else {
-                    logger.warning(() -> String.format("[%-8.8s] Received %s: cannot handle", chaincodeMessage.getTxid(), msgType));
+            if (msgType == KEEPALIVE) {
+                // in any state; sent back as the peer expects
+                logger.fine(() -> "Received KEEPALIVE");
+                this.outgoingMessage.accept(chaincodeMessage);
+            } else {
+                switch (getState()) {
+                case CREATED:
+                    if (msgType == REGISTERED) {
+                        setState(ChaincodeBase.CCState.ESTABLISHED);
+                        logger.fine(() -> String.format("[%-8.8s] Received REGISTERED: moving to established state", chaincodeMessage.getTxid()));
+                    } else {
+                        logger.warning(() -> String.format("[%-8.8s] Received %s: cannot handle", chaincodeMessage.getTxid(), msgType));
+                    }
+                    break;
+                case ESTABLISHED:
+                    if (msgType == READY) {
+                        setState(ChaincodeBase.CCState.READY);
+                        readyListener.run();
+                        logger.fine(() -> String.format("[%-8.8s] Received READY: ready for invocations", chaincodeMessage.getTxid()));
+                    } else {
+                        logger.warning(() -> String.format("[%-8.8s] Received %s: cannot handle", chaincodeMessage.getTxid(), msgType));
+                    }
+                    break;
+                case READY:
+                    handleMsg(chaincodeMessage, msgType);
+                    break;
+                default:
+                    logger.warning(() -> String.format("[%-8.8s] Received %s: cannot handle", chaincodeMessage.getTxid(), chaincodeMessage.getType()));
+                    break;
                 }
-                break;
-            case READY:
-                handleMsg(chaincodeMessage, msgType);
-                break;
-            default:
-                logger.warning(() -> String.format("[%-8.8s] Received %s: cannot handle", chaincodeMessage.getTxid(), chaincodeMessage.getType()));
-                break;
             }
         } catch (final RuntimeException e) {
             // catch any issues with say the comms dropping or something else completely
@@ -149,6 +397,10 @@ public final class InvocationTaskManager {
             this.shutdown();
             throw e;
         }
+
+        if (flowControl != null) {
+            flowControl.readMore();
+        }
     }
 
     /**
@@ -185,8 +437,7 @@ public final class InvocationTaskManager {
         try {
             perflogger.fine(() -> "> sendToTask " + message.getTxid());
 
-            final String key = message.getChannelId() + message.getTxid();
-            final ChaincodeInvocationTask task = this.innvocationTasks.get(key);
+            final ChaincodeInvocationTask task = this.innvocationTasks.get(TxKey.of(message));
             if (task == null) {
                 throw new InterruptedException("Task hasmap missing entry");
             }
@@ -211,26 +462,56 @@ public final class InvocationTaskManager {
      * @throws InterruptedException
      */
     private void newTask(final ChaincodeMessage message, final Type type) {
-        final ChaincodeInvocationTask task = new ChaincodeInvocationTask(message, type, this.outgoingMessage, this.chaincode);
+        final ChaincodeInvocationTask task = new ChaincodeInvocationTask(message, type, this.outgoingMessage, this.chaincode,
+                stateCacheEnabled, writeBufferEnabled, stubTimeout).setQueryPrefetch(queryPrefetch)
+                // with only one transaction, there are no other responses to hold up
+                .setExchangeAllowed(() -> innvocationTasks.size() == 1).setCallbackExecutor(callbacks);
 
         perflogger.fine(() -> "> newTask:created " + message.getTxid());
 
-        this.innvocationTasks.put(task.getTxKey(), task);
+        this.innvocationTasks.put(task.getKey(), task);
+
+        // the deadline runs from now, as the peer will give up on the transaction
+        // in the end however long it waited to start
+        final ScheduledFuture<?> timeout = timeouts == null ? null : timeouts.schedule(() -> {
+            if (task.cancel(String.format("Transaction did not complete within %dms", txTimeout))) {
+                innvocationTasks.remove(task.getKey(), task);
+            }
+        }, txTimeout, TimeUnit.MILLISECONDS);
+
         try {
             perflogger.fine(() -> "> newTask:submitting " + message.getTxid());
 
             // submit the task to run, with the taskService providing the
             // threading support.
+            final Executor executor;
+            if (scheduler != null) {
+                final boolean query = isQuery(message);
+                executor = runnable -> scheduler.execute(runnable, message.getChannelId(), query);
+            } else {
+                executor = taskService;
+            }
+
             final CompletableFuture<Void> response = CompletableFuture.runAsync(() -> {
+                // this task is no longer waiting, so there may be room for more
+                if (flowControl != null) {
+                    flowControl.readMore();
+                }
                 task.call();
-            }, taskService);
+            }, executor);
 
             // we have a future of the chaincode message that should be returned.
             // but waiting for this does not need to block this thread
             // it is important to wait for it however, as we need to remove it from the task
             // list
             response.thenRun(() -> {
-                innvocationTasks.remove(task.getTxKey());
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+                innvocationTasks.remove(task.getKey(), task);
+                if (poolSizer != null) {
+                    poolSizer.recordTask(task.getRunTime(), task.getWaitTime());
+                }
                 perflogger.fine(() -> "< newTask:completed " + message.getTxid());
             });
 
@@ -238,6 +519,10 @@ public final class InvocationTaskManager {
 
         } catch (final RejectedExecutionException e) {
             logger.warning(() -> "Failed to submit task " + message.getTxid() + Logging.formatError(e));
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            innvocationTasks.remove(task.getKey(), task);
             // this means that there is no way that this can be handed off to another
             // thread for processing, and there's no space left in the queue to hold
             // it pending
@@ -249,6 +534,49 @@ public final class InvocationTaskManager {
 
     }
 
+    /**
+     * Is the transaction a query, going by the function it calls. This is asked of
+     * the chaincode once for each function name and remembered.
+     *
+     * @param message INIT or TRANSACTION message
+     * @return true if the function only reads the ledger
+     */
+    private boolean isQuery(final ChaincodeMessage message) {
+        final ByteString function = getFunctionName(message.getPayload());
+        final Boolean known = queryFunctions.get(function);
+        if (known != null) {
+            return known;
+        }
+
+        final boolean query = chaincode.isQueryFunction(function.toStringUtf8());
+        // don't let a caller sending made up function names fill the map
+        if (queryFunctions.size() < MAX_QUERY_FUNCTIONS) {
+            queryFunctions.put(function, query);
+        }
+        return query;
+    }
+
+    /**
+     * The function name is the first argument of the ChaincodeInput; read just
+     * that, rather than parse the whole input.
+     *
+     * @param payload serialized ChaincodeInput
+     * @return function name, or empty if there isn't one
+     */
+    private static ByteString getFunctionName(final ByteString payload) {
+        try {
+            final CodedInputStream input = payload.newCodedInput();
+            final int tag = input.readTag();
+            if (WireFormat.getTagFieldNumber(tag) == ChaincodeInput.ARGS_FIELD_NUMBER
+                    && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                return input.readBytes();
+            }
+        } catch (final IOException e) {
+            logger.fine(() -> "Unable to read function name " + e);
+        }
+        return ByteString.EMPTY;
+    }
+
     /**
      * Set the Consumer function to be used for sending messages back to the peer.
      *
@@ -256,11 +584,111 @@ public final class InvocationTaskManager {
      * @return InvocationTaskManager
      */
     public InvocationTaskManager setResponseConsumer(final Consumer<ChaincodeMessage> outgoingMessage) {
-        this.outgoingMessage = outgoingMessage;
+        final Consumer<ChaincodeMessage> send;
+        if (healthMonitor != null) {
+            send = message -> {
+                healthMonitor.messageSent(message);
+                outgoingMessage.accept(message);
+            };
+        } else {
+            send = outgoingMessage;
+        }
+
+        if (flowControl != null) {
+            this.outgoingMessage = message -> flowControl.sendMessage(message, () -> send.accept(message));
+        } else {
+            this.outgoingMessage = send;
+        }
+
+        return this;
+    }
+
+    /**
+     * Is the reading of messages from the peer to be controlled by this manager.
+     *
+     * @return true if {@link #setMessageRequester} should be called
+     */
+    public boolean isFlowControlEnabled() {
+        return flowControl != null;
+    }
+
+    /**
+     * Set the function used to ask for more messages from the peer, when flow
+     * control is enabled. One message will have been asked for already.
+     *
+     * @param requester Called with the number of messages wanted
+     * @return InvocationTaskManager
+     */
+    public InvocationTaskManager setMessageRequester(final IntConsumer requester) {
+        if (flowControl != null) {
+            flowControl.setRequester(requester);
+        }
+
+        return this;
+    }
+
+    /**
+     * Called when a message for a transaction could not be sent to the peer.
+     * The stream is no longer usable, so the transaction is cancelled rather than
+     * left waiting for a response that will never come.
+     *
+     * @param message that wasn't sent
+     * @param cause   why not
+     */
+    public void sendFailed(final ChaincodeMessage message, final Throwable cause) {
+        final ChaincodeInvocationTask task = this.innvocationTasks.get(TxKey.of(message));
+        if (task != null) {
+            task.cancel("Failed to send " + message.getType() + " to the peer: " + cause.getMessage());
+        }
+    }
+
+    /**
+     * Set what to call once the stream reaches the ready state.
+     *
+     * @param listener Called on the thread reading from the peer
+     * @return InvocationTaskManager
+     */
+    public InvocationTaskManager setReadyListener(final Runnable listener) {
+        this.readyListener = listener;
+        return this;
+    }
+
+    /**
+     * Set the function used to cancel the stream to the peer, should the peer
+     * stop responding.
+     *
+     * @param canceller Called with the reason
+     * @return InvocationTaskManager
+     */
+    public InvocationTaskManager setStreamCanceller(final Consumer<String> canceller) {
+        if (healthMonitor != null) {
+            healthMonitor.setCanceller(canceller);
+        }
 
         return this;
     }
 
+    private ChaincodeBase.CCState getState() {
+        return streamState ? state : chaincode.getState();
+    }
+
+    private void setState(final ChaincodeBase.CCState newState) {
+        state = newState;
+        if (!streamState || newState == ChaincodeBase.CCState.READY) {
+            chaincode.setState(newState);
+        }
+    }
+
+    /**
+     * Has the stream this manager handles messages from been through the
+     * 'register' phase.
+     *
+     * @return true if ready for invocations
+     */
+    public boolean isReady() {
+        return getState() == ChaincodeBase.CCState.READY;
+    }
+
     /**
      * Send the initial protocol message for the 'register' phase.
      *
@@ -269,7 +697,11 @@ public final class InvocationTaskManager {
     public InvocationTaskManager register() {
 
         logger.info(() -> "Registering new chaincode " + this.chaincodeId);
-        chaincode.setState(ChaincodeBase.CCState.CREATED);
+        setState(ChaincodeBase.CCState.CREATED);
+        StreamTaskMetrics.getInstance().add(taskMetrics);
+        if (healthMonitor != null) {
+            healthMonitor.start();
+        }
         this.outgoingMessage.accept(ChaincodeMessageFactory.newRegisterChaincodeMessage(this.chaincodeId));
 
         return this;
@@ -283,6 +715,16 @@ public final class InvocationTaskManager {
     public void shutdown() {
         // Recommended shutdown process from
         // https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/ExecutorService.html
+        if (poolSizer != null) {
+            poolSizer.stop();
+        }
+        if (timeouts != null) {
+            timeouts.shutdownNow();
+        }
+        if (healthMonitor != null) {
+            healthMonitor.stop();
+        }
+        StreamTaskMetrics.getInstance().remove(taskMetrics);
         // Disable new tasks from being submitted
         this.taskService.shutdown();
         try {
@@ -301,6 +743,8 @@ public final class InvocationTaskManager {
             // Preserve interrupt status
             Thread.currentThread().interrupt();
         }
+        // once no transaction is left to wait for them
+        callbacks.shutdown();
     }
 
 }
@@ -5,38 +5,107 @@
  */
 package org.hyperledger.fabric.shim.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
 import org.hyperledger.fabric.protos.ledger.queryresult.KvQueryResult.KV;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
 
 class KeyValueImpl implements KeyValue {
 
-    private final String key;
-    private final ByteString value;
+    // The serialized KV from a query result, if created from one; decoded when
+    // first needed. Decoding twice on different threads gives equal results,
+    // and the key is set last so the value is seen with it.
+    private final ByteString encoded;
+    private volatile String key;
+    private ByteString value;
 
     KeyValueImpl(final KV kv) {
-        this.key = kv.getKey();
+        this.encoded = null;
         this.value = kv.getValue();
+        this.key = kv.getKey();
+    }
+
+    /**
+     * The key and value are only decoded when first asked for, and the value
+     * refers to the serialized KV rather than being copied out of it.
+     *
+     * @param encoded serialized KV
+     */
+    KeyValueImpl(final ByteString encoded) {
+        this.encoded = encoded;
+    }
+
+    private void decode() {
+        if (key != null) {
+            return;
+        }
+
+        String decodedKey = "";
+        ByteString decodedValue = ByteString.EMPTY;
+        try {
+            final CodedInputStream input = encoded.newCodedInput();
+            int tag;
+            while ((tag = input.readTag()) != 0) {
+                final boolean lengthDelimited = WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED;
+                final int field = WireFormat.getTagFieldNumber(tag);
+                if (lengthDelimited && field == KV.KEY_FIELD_NUMBER) {
+                    decodedKey = input.readStringRequireUtf8();
+                } else if (lengthDelimited && field == KV.VALUE_FIELD_NUMBER) {
+                    final int length = input.readRawVarint32();
+                    final int start = input.getTotalBytesRead();
+                    input.skipRawBytes(length);
+                    decodedValue = encoded.substring(start, start + length);
+                } else {
+                    input.skipField(tag);
+                }
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        value = decodedValue;
+        key = decodedKey;
     }
 
     @Override
     public String getKey() {
+        decode();
         return key;
     }
 
     @Override
     public byte[] getValue() {
+        decode();
         return value.toByteArray();
     }
 
     @Override
     public String getStringValue() {
+        decode();
         return value.toStringUtf8();
     }
 
+    @Override
+    public ByteBuffer getValueBuffer() {
+        decode();
+        return value.asReadOnlyByteBuffer();
+    }
+
+    @Override
+    public InputStream getValueStream() {
+        decode();
+        return value.newInput();
+    }
+
     @Override
     public int hashCode() {
+        decode();
         final int prime = 31;
         int result = 1;
         result = prime * result + ((key == null) ? 0 : key.hashCode());
@@ -56,6 +125,8 @@ class KeyValueImpl implements KeyValue {
             return false;
         }
         final KeyValueImpl other = (KeyValueImpl) obj;
+        decode();
+        other.decode();
         if (!key.equals(other.key)) {
             return false;
         }
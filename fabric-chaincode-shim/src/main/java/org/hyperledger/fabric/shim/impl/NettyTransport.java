@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+import io.grpc.netty.NettyChannelBuilder;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Settings for the Netty transport under the gRPC channel to the peer, read
+ * from the chaincode's config.props.
+ *
+ * <pre>
+ * CHAINCODE_GRPC_TRANSPORT=nio
+ * CHAINCODE_GRPC_EVENT_LOOP_THREADS=0
+ * CHAINCODE_GRPC_DIRECT_EXECUTOR=false
+ * CHAINCODE_GRPC_MAX_INBOUND_MESSAGE_SIZE=4194304
+ * CHAINCODE_GRPC_FLOW_CONTROL_WINDOW=1048576
+ * CHAINCODE_GRPC_ALLOCATOR=default
+ * </pre>
+ *
+ * The transport is 'nio', or 'epoll' for Linux's native transport. That needs
+ * netty-transport-native-epoll, for the platform and of the same version as the
+ * Netty gRPC uses, added to the chaincode's dependencies; without it NIO is
+ * used. The event loop threads, 0 for Netty's default, are kept for the life
+ * of the chaincode and shared by every connection it makes.
+ *
+ * With the direct executor, messages from the peer are handled on the event
+ * loop thread that read them rather than handed to another thread. That saves
+ * a thread switch per message, but anything the chaincode does on completion
+ * of a stub call's future then holds up reading from the peer, so it must not
+ * block. When a stream closes, the shim shuts it down on a thread of its own,
+ * as that waits on the channel, which needs the event loop.
+ *
+ * The allocator is 'default' for gRPC's own choice, or 'pooled' or 'unpooled'.
+ * The other settings default to the gRPC defaults.
+ */
+public final class NettyTransport {
+    private static Logger logger = Logger.getLogger(NettyTransport.class.getName());
+
+    private final String transport;
+    private final int eventLoopThreads;
+    private final boolean directExecutor;
+    private final int maxInboundMessageSize;
+    private final int flowControlWindow;
+    private final String allocator;
+
+    // Created on first use, then reused for every channel
+    private EventLoopGroup eventLoopGroup;
+    private Class<? extends Channel> channelType;
+
+    /**
+     *
+     * @param props The chaincode's config.props
+     */
+    public NettyTransport(final Properties props) {
+        transport = (String) props.getOrDefault("CHAINCODE_GRPC_TRANSPORT", "nio");
+        eventLoopThreads = Integer.parseInt((String) props.getOrDefault("CHAINCODE_GRPC_EVENT_LOOP_THREADS", "0"));
+        directExecutor = Boolean.parseBoolean((String) props.getOrDefault("CHAINCODE_GRPC_DIRECT_EXECUTOR", "false"));
+        maxInboundMessageSize = Integer.parseInt((String) props.getOrDefault("CHAINCODE_GRPC_MAX_INBOUND_MESSAGE_SIZE", "4194304"));
+        flowControlWindow = Integer.parseInt((String) props.getOrDefault("CHAINCODE_GRPC_FLOW_CONTROL_WINDOW",
+                Integer.toString(NettyChannelBuilder.DEFAULT_FLOW_CONTROL_WINDOW)));
+        allocator = (String) props.getOrDefault("CHAINCODE_GRPC_ALLOCATOR", "default");
+
+        logger.info(() -> "gRPC Transport [CHAINCODE_GRPC_TRANSPORT]" + transport);
+        logger.info(() -> "gRPC Event Loop Threads [CHAINCODE_GRPC_EVENT_LOOP_THREADS]" + eventLoopThreads);
+        logger.info(() -> "gRPC Direct Executor [CHAINCODE_GRPC_DIRECT_EXECUTOR]" + directExecutor);
+        logger.info(() -> "gRPC Max Inbound Message Size [CHAINCODE_GRPC_MAX_INBOUND_MESSAGE_SIZE]" + maxInboundMessageSize);
+        logger.info(() -> "gRPC Flow Control Window [CHAINCODE_GRPC_FLOW_CONTROL_WINDOW]" + flowControlWindow);
+        logger.info(() -> "gRPC Allocator [CHAINCODE_GRPC_ALLOCATOR]" + allocator);
+    }
+
+    /**
+     * Apply the settings to a builder for a channel to the peer.
+     *
+     * @param builder for the channel
+     * @return the builder
+     */
+    public NettyChannelBuilder configure(final NettyChannelBuilder builder) {
+        builder.maxInboundMessageSize(maxInboundMessageSize);
+        builder.flowControlWindow(flowControlWindow);
+
+        if (directExecutor) {
+            builder.directExecutor();
+        }
+
+        synchronized (this) {
+            if (eventLoopGroup == null && ("epoll".equalsIgnoreCase(transport) || eventLoopThreads > 0)) {
+                createEventLoopGroup();
+            }
+            if (eventLoopGroup != null) {
+                builder.eventLoopGroup(eventLoopGroup);
+                builder.channelType(channelType);
+            }
+        }
+
+        final ByteBufAllocator bufAllocator = getAllocator();
+        if (bufAllocator != null) {
+            builder.withOption(ChannelOption.ALLOCATOR, bufAllocator);
+        }
+        return builder;
+    }
+
+    /**
+     *
+     * @return the event loop threads created for the channels, or null if
+     *         gRPC's own are used
+     */
+    synchronized EventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    private void createEventLoopGroup() {
+        if ("epoll".equalsIgnoreCase(transport)) {
+            final ThreadFactory threadFactory = new DefaultThreadFactory("fabric-grpc-epoll", true);
+            try {
+                final Class<?> epoll = Class.forName("io.netty.channel.epoll.Epoll");
+                if ((Boolean) epoll.getMethod("isAvailable").invoke(null)) {
+                    eventLoopGroup = (EventLoopGroup) Class.forName("io.netty.channel.epoll.EpollEventLoopGroup").getConstructor(int.class, ThreadFactory.class)
+                            .newInstance(eventLoopThreads, threadFactory);
+                    channelType = Class.forName("io.netty.channel.epoll.EpollSocketChannel").asSubclass(Channel.class);
+                    return;
+                }
+                final Object cause = epoll.getMethod("unavailabilityCause").invoke(null);
+                logger.warning(() -> "The epoll transport is not available, using NIO: " + cause);
+            } catch (final ReflectiveOperationException e) {
+                logger.warning(() -> "The epoll transport is not available, using NIO: " + e);
+            }
+        }
+
+        eventLoopGroup = new NioEventLoopGroup(eventLoopThreads, new DefaultThreadFactory("fabric-grpc-nio", true));
+        channelType = NioSocketChannel.class;
+    }
+
+    private ByteBufAllocator getAllocator() {
+        switch (allocator.toLowerCase()) {
+        case "pooled":
+            return PooledByteBufAllocator.DEFAULT;
+        case "unpooled":
+            return UnpooledByteBufAllocator.DEFAULT;
+        default:
+            return null;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.Logging;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+
+import io.grpc.stub.CallStreamObserver;
+import io.grpc.stub.ClientCallStreamObserver;
+
+/**
+ * Sends messages to the peer from any number of threads.
+ *
+ * A gRPC stream can only be written to by one thread at a time. Rather than
+ * each thread taking a lock to write its own message, a thread that finds no
+ * one else writing and nothing queued writes its message straight away. Other
+ * threads add their messages to a queue, and the writing thread sends
+ * everything queued, including messages added while it does so, as one batch
+ * that the transport can flush together. No thread waits for another.
+ *
+ * Writing also stops while the stream is not ready to take more messages, and
+ * starts again when gRPC says it is.
+ *
+ * Should a message fail to send, or the stream close, the stream is given up
+ * on, and the messages still queued and any sent after are passed to the
+ * failure handler rather than written.
+ */
+public final class OutboundMessageWriter implements Consumer<ChaincodeMessage> {
+    private static Logger logger = Logger.getLogger(OutboundMessageWriter.class.getName());
+    private static Logger perflogger = Logger.getLogger(Logging.PERFLOGGER);
+
+    private final Queue<ChaincodeMessage> queue = new ConcurrentLinkedQueue<>();
+    // Number of times writing has been asked for since the writer last found the
+    // queue empty; whoever moves it from zero does the writing
+    private final AtomicInteger wip = new AtomicInteger();
+    private CallStreamObserver<ChaincodeMessage> stream;
+    private BiConsumer<ChaincodeMessage, Throwable> failureHandler = (message, cause) -> {
+    };
+    // Why the stream was given up on, once it has been
+    private volatile Throwable failure;
+
+    /**
+     * Set the stream to write to; must be called before the stream has started.
+     *
+     * @param stream to the peer
+     */
+    public void setStream(final CallStreamObserver<ChaincodeMessage> stream) {
+        this.stream = stream;
+        stream.setOnReadyHandler(this::drain);
+    }
+
+    /**
+     * Set what to do with messages that could not be sent.
+     *
+     * @param failureHandler called with each message and why it wasn't sent
+     */
+    public void setFailureHandler(final BiConsumer<ChaincodeMessage, Throwable> failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    @Override
+    public void accept(final ChaincodeMessage message) {
+        // nothing queued, so nothing to keep this message behind
+        if (wip.compareAndSet(0, 1)) {
+            if (queue.isEmpty() && (failure != null || stream.isReady())) {
+                write(message);
+            } else {
+                queue.add(message);
+            }
+            drainLoop();
+            return;
+        }
+        queue.add(message);
+        drain();
+    }
+
+    /**
+     * Give up on the stream, as it has closed; the messages still queued, and any
+     * sent after, are passed to the failure handler.
+     *
+     * @param cause why the stream closed
+     */
+    public void close(final Throwable cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+        drain();
+    }
+
+    /**
+     *
+     * @return messages waiting to be written
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        drainLoop();
+    }
+
+    // Called by the one thread that moved wip from zero
+    private void drainLoop() {
+        int missed = 1;
+        do {
+            ChaincodeMessage message;
+            while ((failure != null || stream.isReady()) && (message = queue.poll()) != null) {
+                write(message);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void write(final ChaincodeMessage message) {
+        if (failure != null) {
+            failureHandler.accept(message, failure);
+            return;
+        }
+
+        perflogger.fine(() -> "> sendToPeer " + message.getTxid());
+        try {
+            stream.onNext(message);
+        } catch (final RuntimeException e) {
+            logger.severe(() -> String.format("[%-8.8s] Failed to send %s to the peer%s", message.getTxid(), message.getType(), Logging.formatError(e)));
+            failure = e;
+            cancelStream(e);
+            failureHandler.accept(message, e);
+        }
+        perflogger.fine(() -> "< sendToPeer " + message.getTxid());
+    }
+
+    // the peer may be waiting for the message, so the stream is no use now
+    private void cancelStream(final RuntimeException e) {
+        try {
+            if (stream instanceof ClientCallStreamObserver) {
+                ((ClientCallStreamObserver<ChaincodeMessage>) stream).cancel("Failed to send message to the peer", e);
+            } else {
+                stream.onError(e);
+            }
+        } catch (final RuntimeException cancelFailed) {
+            logger.warning(() -> "Failed to cancel the stream" + Logging.formatError(cancelFailed));
+        }
+    }
+}
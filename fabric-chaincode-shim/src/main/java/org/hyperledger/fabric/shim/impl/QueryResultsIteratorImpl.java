@@ -9,9 +9,15 @@ package org.hyperledger.fabric.shim.impl;
 import static org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type.QUERY_STATE_CLOSE;
 import static org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type.QUERY_STATE_NEXT;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
@@ -22,7 +28,7 @@ import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryStateNext;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
 
 import com.google.protobuf.ByteString;
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
 
 /**
  * This class provides an ITERABLE object of query results.
@@ -40,77 +46,184 @@ class QueryResultsIteratorImpl<T> implements QueryResultsIterator<T> {
     private final ChaincodeInvocationTask handler;
     private final String channelId;
     private final String txId;
-    private Iterator<QueryResultBytes> currentIterator;
+    private List<QueryResultBytes> currentResults;
+    private int position;
     private QueryResponse currentQueryResponse;
     private Function<QueryResultBytes, T> mapper;
 
+    // Results left in the current page when the next is asked for, 0 to wait
+    // until the page is used up; and the next page, if already asked for
+    private final int prefetch;
+    private CompletableFuture<ByteString> nextPage;
+
+    // Results handed out so far, and whether closed
+    private long returned;
+    private boolean closed;
+
     QueryResultsIteratorImpl(final ChaincodeInvocationTask handler, final String channelId, final String txId, final ByteString responseBuffer,
             final Function<QueryResultBytes, T> mapper) {
+        this(handler, channelId, txId, responseBuffer, mapper, 0);
+    }
 
+    /**
+     * With prefetch set, the next page of results is asked for from the peer
+     * while the chaincode is still working through the current one, so that it
+     * need not wait for it at the end.
+     *
+     * @param handler
+     * @param channelId
+     * @param txId
+     * @param responseBuffer
+     * @param mapper
+     * @param prefetch       ask for the next page when this many results are
+     *                       left in the current one, 0 to wait until it is used
+     *                       up
+     */
+    QueryResultsIteratorImpl(final ChaincodeInvocationTask handler, final String channelId, final String txId, final ByteString responseBuffer,
+            final Function<QueryResultBytes, T> mapper, final int prefetch) {
+
+        this.handler = handler;
+        this.channelId = channelId;
+        this.txId = txId;
+        this.currentQueryResponse = parse(responseBuffer);
+        this.currentResults = currentQueryResponse.getResultsList();
+        this.mapper = mapper;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * The results, and the metadata, are left referring to the response rather
+     * than copied out of it.
+     *
+     * @param responseBuffer serialized QueryResponse
+     * @return the QueryResponse
+     */
+    private static QueryResponse parse(final ByteString responseBuffer) {
         try {
-            this.handler = handler;
-            this.channelId = channelId;
-            this.txId = txId;
-            this.currentQueryResponse = QueryResponse.parseFrom(responseBuffer);
-            this.currentIterator = currentQueryResponse.getResultsList().iterator();
-            this.mapper = mapper;
-        } catch (final InvalidProtocolBufferException e) {
+            final CodedInputStream input = responseBuffer.newCodedInput();
+            input.enableAliasing(true);
+            return QueryResponse.parseFrom(input);
+        } catch (final IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     *
+     * @return the response holding the results currently being returned, the
+     *         first until the iterator moves on to the next page
+     */
+    QueryResponse getCurrentQueryResponse() {
+        return currentQueryResponse;
+    }
+
     @Override
     public Iterator<T> iterator() {
         return new Iterator<T>() {
 
             @Override
             public boolean hasNext() {
-                return currentIterator.hasNext() || currentQueryResponse.getHasMore();
+                return position < currentResults.size() || currentQueryResponse.getHasMore();
             }
 
             @Override
             public T next() {
 
-                // return next fetched result, if any
-                if (currentIterator.hasNext()) {
-                    return mapper.apply(currentIterator.next());
+                if (position >= currentResults.size()) {
+                    // throw exception if there are no more expected results
+                    if (!currentQueryResponse.getHasMore()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    // get more results from peer, unless already asked for
+                    final ByteString responseMessage;
+                    if (nextPage != null) {
+                        responseMessage = handler.join(nextPage);
+                        nextPage = null;
+                    } else {
+                        responseMessage = handler.invoke(newQueryStateNextMessage());
+                    }
+                    currentQueryResponse = parse(responseMessage);
+                    currentResults = currentQueryResponse.getResultsList();
+                    position = 0;
                 }
 
-                // throw exception if there are no more expected results
-                if (!currentQueryResponse.getHasMore()) {
-                    throw new NoSuchElementException();
-                }
+                final QueryResultBytes result = currentResults.get(position++);
+                returned++;
 
-                // get more results from peer
+                if (prefetch > 0 && nextPage == null && currentQueryResponse.getHasMore() && currentResults.size() - position <= prefetch) {
+                    nextPage = handler.invokeAsync(newQueryStateNextMessage());
+                }
 
-                final ByteString requestPayload = QueryStateNext.newBuilder().setId(currentQueryResponse.getId()).build().toByteString();
-                final ChaincodeMessage requestNextMessage = ChaincodeMessageFactory.newEventMessage(QUERY_STATE_NEXT, channelId, txId, requestPayload);
+                return mapper.apply(result);
 
-                final ByteString responseMessage = QueryResultsIteratorImpl.this.handler.invoke(requestNextMessage);
-                try {
-                    currentQueryResponse = QueryResponse.parseFrom(responseMessage);
-                } catch (final InvalidProtocolBufferException e) {
-                    throw new RuntimeException(e);
-                }
-                currentIterator = currentQueryResponse.getResultsList().iterator();
+            }
 
-                // return next fetched result
-                return mapper.apply(currentIterator.next());
+        };
+    }
 
+    /**
+     * The results are fetched from the peer as the stream goes, so at most a
+     * page or two is held at once.
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        final Iterator<T> iterator = iterator();
+        return new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(final Consumer<? super T> action) {
+                if (!iterator.hasNext()) {
+                    return false;
+                }
+                action.accept(iterator.next());
+                return true;
             }
 
+            @Override
+            public long estimateSize() {
+                return QueryResultsIteratorImpl.this.estimateSize();
+            }
         };
     }
 
+    /**
+     *
+     * @return results not yet handed out, or Long.MAX_VALUE if not known
+     */
+    long estimateSize() {
+        return currentQueryResponse.getHasMore() ? Long.MAX_VALUE : currentResults.size() - position;
+    }
+
+    /**
+     *
+     * @return results handed out so far
+     */
+    long getReturned() {
+        return returned;
+    }
+
+    private ChaincodeMessage newQueryStateNextMessage() {
+        final ByteString requestPayload = QueryStateNext.newBuilder().setId(currentQueryResponse.getId()).build().toByteString();
+        return ChaincodeMessageFactory.newEventMessage(QUERY_STATE_NEXT, channelId, txId, requestPayload);
+    }
+
     @Override
     public void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        // any page asked for ahead is answered before the close, and not needed
+        nextPage = null;
 
         final ByteString requestPayload = QueryStateClose.newBuilder().setId(currentQueryResponse.getId()).build().toByteString();
 
         final ChaincodeMessage requestNextMessage = ChaincodeMessageFactory.newEventMessage(QUERY_STATE_CLOSE, channelId, txId, requestPayload);
         this.handler.invoke(requestNextMessage);
 
-        this.currentIterator = Collections.emptyIterator();
+        this.currentResults = Collections.emptyList();
+        this.position = 0;
         this.currentQueryResponse = QueryResponse.newBuilder().setHasMore(false).build();
     }
 
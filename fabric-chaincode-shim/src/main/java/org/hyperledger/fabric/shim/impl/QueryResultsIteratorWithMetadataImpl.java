@@ -8,9 +8,9 @@ package org.hyperledger.fabric.shim.impl;
 
 import java.util.function.Function;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import org.hyperledger.fabric.protos.peer.ChaincodeShim;
-import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponse;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResultBytes;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 
@@ -29,7 +29,9 @@ import com.google.protobuf.InvalidProtocolBufferException;
 public final class QueryResultsIteratorWithMetadataImpl<T> extends QueryResultsIteratorImpl<T> implements QueryResultsIteratorWithMetadata<T> {
     private static Logger logger = Logger.getLogger(QueryResultsIteratorWithMetadataImpl.class.getName());
 
-    private ChaincodeShim.QueryResponseMetadata metadata;
+    // Decoded when first asked for
+    private final ByteString metadataBytes;
+    private volatile ChaincodeShim.QueryResponseMetadata metadata;
 
     /**
      *
@@ -41,18 +43,50 @@ public final class QueryResultsIteratorWithMetadataImpl<T> extends QueryResultsI
      */
     public QueryResultsIteratorWithMetadataImpl(final ChaincodeInvocationTask handler, final String channelId, final String txId,
             final ByteString responseBuffer, final Function<QueryResultBytes, T> mapper) {
-        super(handler, channelId, txId, responseBuffer, mapper);
-        try {
-            final QueryResponse queryResponse = QueryResponse.parseFrom(responseBuffer);
-            metadata = ChaincodeShim.QueryResponseMetadata.parseFrom(queryResponse.getMetadata());
-        } catch (final InvalidProtocolBufferException e) {
-            logger.warning("can't parse response metadata");
-            throw new RuntimeException(e);
-        }
+        this(handler, channelId, txId, responseBuffer, mapper, 0);
+    }
+
+    /**
+     *
+     * @param handler
+     * @param channelId
+     * @param txId
+     * @param responseBuffer
+     * @param mapper
+     * @param prefetch       ask for the next page when this many results are
+     *                       left in the current one, 0 to wait until it is used
+     *                       up
+     */
+    public QueryResultsIteratorWithMetadataImpl(final ChaincodeInvocationTask handler, final String channelId, final String txId,
+            final ByteString responseBuffer, final Function<QueryResultBytes, T> mapper, final int prefetch) {
+        super(handler, channelId, txId, responseBuffer, mapper, prefetch);
+        metadataBytes = getCurrentQueryResponse().getMetadata();
     }
 
     @Override
     public ChaincodeShim.QueryResponseMetadata getMetadata() {
+        if (metadata == null) {
+            try {
+                metadata = ChaincodeShim.QueryResponseMetadata.parseFrom(metadataBytes);
+            } catch (final InvalidProtocolBufferException e) {
+                logger.warning("can't parse response metadata");
+                throw new RuntimeException(e);
+            }
+        }
         return metadata;
     }
+
+    @Override
+    public Stream<T> stream() {
+        return QueryResultsIteratorWithMetadata.super.stream();
+    }
+
+    /**
+     * The metadata says how many records the peer fetched for the page.
+     */
+    @Override
+    long estimateSize() {
+        final long fetched = getMetadata().getFetchedRecordsCount();
+        return fetched > 0 ? Math.max(0, fetched - getReturned()) : super.estimateSize();
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.Logging;
+
+import io.grpc.ManagedChannelBuilder;
+
+/**
+ * Connects to the peer, and connects again whenever the stream fails, rather
+ * than leaving the chaincode with nothing to do until the peer starts a new
+ * one. The chaincode itself, and everything it has loaded and cached, is kept;
+ * each connection gets a new channel and InvocationTaskManager, and registers
+ * with the peer again.
+ *
+ * Attempts are spaced out, starting at the initial backoff and doubling each
+ * time up to the maximum. Once a connection reaches the ready state, the count
+ * of attempts starts again, and the next failure waits the initial backoff.
+ */
+public final class ReconnectSupervisor {
+    private static Logger logger = Logger.getLogger(ReconnectSupervisor.class.getName());
+
+    private final Callable<ManagedChannelBuilder<?>> channelBuilder;
+    private final Supplier<InvocationTaskManager> managers;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final int maxAttempts;
+
+    // Not a daemon, so that the chaincode doesn't exit while waiting to reconnect
+    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1, runnable -> new Thread(runnable, "fabric-reconnect"));
+
+    // Failed attempts since the last connection that reached ready, counted by
+    // the scheduler thread and the stream's callbacks
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     *
+     * @param channelBuilder Creates the builder for each new channel to the peer
+     * @param managers       Creates the InvocationTaskManager for each connection
+     * @param initialBackoff Milliseconds to wait before the first attempt to
+     *                       reconnect
+     * @param maxBackoff     Most milliseconds to wait between attempts
+     * @param maxAttempts    Attempts to make in a row before giving up, 0 for no
+     *                       limit
+     */
+    public ReconnectSupervisor(final Callable<ManagedChannelBuilder<?>> channelBuilder, final Supplier<InvocationTaskManager> managers,
+            final long initialBackoff, final long maxBackoff, final int maxAttempts) {
+        if (initialBackoff <= 0 || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException("Backoff must be positive, and the maximum no less than the initial");
+        }
+        this.channelBuilder = channelBuilder;
+        this.managers = managers;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Make the first connection.
+     */
+    public void start() {
+        scheduler.execute(this::connect);
+    }
+
+    private void connect() {
+        try {
+            final ChaincodeSupportClient client = new ChaincodeSupportClient(channelBuilder.call());
+            // noted as it happens, as by the time the stream fails the
+            // connection may no longer say whether it got there
+            final InvocationTaskManager itm = managers.get().setReadyListener(this::reachedReady);
+            client.start(itm, this::disconnected);
+        } catch (final Exception e) {
+            logger.severe(() -> "Failed to connect to the peer" + Logging.formatError(e));
+            retry();
+        }
+    }
+
+    void reachedReady() {
+        failures.set(0);
+    }
+
+    void disconnected() {
+        retry();
+    }
+
+    /**
+     *
+     * @return failed attempts since a connection last reached ready
+     */
+    int getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Stop connecting again.
+     */
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private void retry() {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        final int attempt = failures.incrementAndGet();
+        if (maxAttempts > 0 && attempt > maxAttempts) {
+            logger.severe(() -> String.format("Giving up on connecting to the peer after %d attempts", maxAttempts));
+            scheduler.shutdown();
+            return;
+        }
+
+        final long backoff = getBackoff(attempt);
+        logger.warning(() -> String.format("Connecting to the peer again in %dms, attempt %d", backoff, attempt));
+        scheduler.schedule(this::connect, backoff, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     *
+     * @param attempt 1 for the first attempt after a connection is lost
+     * @return milliseconds to wait before the attempt
+     */
+    long getBackoff(final int attempt) {
+        long backoff = initialBackoff;
+        for (int i = 1; i < attempt && backoff < maxBackoff; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, maxBackoff);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ToIntFunction;
+
+import org.hyperledger.fabric.metrics.TaskMetricsCollector;
+
+/**
+ * The task metrics of every stream to the peer, added together, so that the
+ * metrics provider sees the whole chaincode however many streams it has open.
+ * Each stream's InvocationTaskManager adds its own metrics when it registers
+ * with the peer and removes them when it shuts down, so that managers never
+ * started are not counted, or kept.
+ */
+final class StreamTaskMetrics implements TaskMetricsCollector {
+
+    private static final StreamTaskMetrics INSTANCE = new StreamTaskMetrics();
+
+    private final CopyOnWriteArrayList<TaskMetricsCollector> streams = new CopyOnWriteArrayList<>();
+
+    static StreamTaskMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    void add(final TaskMetricsCollector stream) {
+        streams.addIfAbsent(stream);
+    }
+
+    void remove(final TaskMetricsCollector stream) {
+        streams.remove(stream);
+    }
+
+    private int sum(final ToIntFunction<TaskMetricsCollector> metric) {
+        return streams.stream().mapToInt(metric).sum();
+    }
+
+    @Override
+    public int getCurrentTaskCount() {
+        return sum(TaskMetricsCollector::getCurrentTaskCount);
+    }
+
+    @Override
+    public int getCurrentQueueCount() {
+        return sum(TaskMetricsCollector::getCurrentQueueCount);
+    }
+
+    @Override
+    public int getActiveCount() {
+        return sum(TaskMetricsCollector::getActiveCount);
+    }
+
+    @Override
+    public int getPoolSize() {
+        return sum(TaskMetricsCollector::getPoolSize);
+    }
+
+    @Override
+    public int getCorePoolSize() {
+        return sum(TaskMetricsCollector::getCorePoolSize);
+    }
+
+    /**
+     * The largest size of each stream's pool, added together; the pools may
+     * not all have been that large at once.
+     */
+    @Override
+    public int getLargestPoolSize() {
+        return sum(TaskMetricsCollector::getLargestPoolSize);
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return sum(TaskMetricsCollector::getMaximumPoolSize);
+    }
+
+    @Override
+    public Map<String, Integer> getChannelQueueCounts() {
+        final Map<String, Integer> counts = new HashMap<>();
+        for (final TaskMetricsCollector stream : streams) {
+            stream.getChannelQueueCounts().forEach((channel, count) -> counts.merge(channel, count, Integer::sum));
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntSupplier;
+import java.util.function.ToIntFunction;
+
+import org.hyperledger.fabric.metrics.TaskMetricsCollector;
+
+/**
+ * Decides the order in which waiting transactions are run.
+ *
+ * Transactions are only handed to the executor when it has a thread free for
+ * them, so they wait here rather than in the executor's queue. Queries and
+ * submits wait in separate lanes; while both have transactions waiting, up to
+ * queryWeight queries are run for each submit. So a query does not wait behind
+ * every long running submit that arrived before it, and submits are never
+ * starved by a stream of queries.
+ *
+ * Optionally each channel has lanes of its own. Channels with transactions
+ * waiting then take turns, each running as many transactions as its weight
+ * per turn, and no more at once than its limit. So a busy channel can't hold
+ * up the others.
+ */
+final class TaskScheduler implements TaskMetricsCollector {
+
+    private static final String ALL_CHANNELS = "";
+
+    private final Executor executor;
+    private final TaskMetricsCollector executorMetrics;
+    private final IntSupplier concurrency;
+    private final int queueSize;
+    private final int queryWeight;
+    private final boolean perChannel;
+    private final ToIntFunction<String> channelLimit;
+    private final ToIntFunction<String> channelWeight;
+
+    // All guarded by this
+    private final Map<String, Lanes> channels = new HashMap<>();
+    // Channels with transactions waiting, the one whose turn it is first
+    private final Deque<Lanes> turns = new ArrayDeque<>();
+    private int running;
+    private int queued;
+
+    /**
+     * The waiting transactions of a channel.
+     */
+    private final class Lanes {
+        private final String channel;
+        private final int limit;
+        private final int weight;
+        private final Deque<Runnable> queries = new ArrayDeque<>();
+        private final Deque<Runnable> submits = new ArrayDeque<>();
+        private int running;
+        private int queriesInARow;
+        // run so far this turn
+        private int turn;
+
+        Lanes(final String channel) {
+            this.channel = channel;
+            this.limit = perChannel ? channelLimit.applyAsInt(channel) : Integer.MAX_VALUE;
+            this.weight = perChannel ? channelWeight.applyAsInt(channel) : 1;
+        }
+
+        boolean nextIsQuery() {
+            return !queries.isEmpty() && (queriesInARow < queryWeight || submits.isEmpty());
+        }
+
+        Runnable next() {
+            if (nextIsQuery()) {
+                queriesInARow++;
+                return queries.poll();
+            }
+            queriesInARow = 0;
+            return submits.poll();
+        }
+
+        int size() {
+            return queries.size() + submits.size();
+        }
+    }
+
+    /**
+     *
+     * @param executor        Runs the tasks
+     * @param executorMetrics Metrics of the executor
+     * @param concurrency     How many tasks to have the executor run at once
+     * @param queueSize       How many tasks may wait before more are rejected
+     * @param queryWeight     Number of queries to run for each submit
+     */
+    TaskScheduler(final Executor executor, final TaskMetricsCollector executorMetrics, final IntSupplier concurrency, final int queueSize,
+            final int queryWeight) {
+        this(executor, executorMetrics, concurrency, queueSize, queryWeight, null, null);
+    }
+
+    /**
+     *
+     * @param executor        Runs the tasks
+     * @param executorMetrics Metrics of the executor
+     * @param concurrency     How many tasks to have the executor run at once
+     * @param queueSize       How many tasks may wait before more are rejected
+     * @param queryWeight     Number of queries to run for each submit
+     * @param channelLimit    Given a channel, how many of its tasks may run at
+     *                        once; null to not schedule by channel
+     * @param channelWeight   Given a channel, how many of its tasks to run per
+     *                        turn
+     */
+    TaskScheduler(final Executor executor, final TaskMetricsCollector executorMetrics, final IntSupplier concurrency, final int queueSize,
+            final int queryWeight, final ToIntFunction<String> channelLimit, final ToIntFunction<String> channelWeight) {
+        if (queryWeight <= 0) {
+            throw new IllegalArgumentException("Query weight must be at least 1");
+        }
+        this.executor = executor;
+        this.executorMetrics = executorMetrics;
+        this.concurrency = concurrency;
+        this.queueSize = queueSize;
+        this.queryWeight = queryWeight;
+        this.perChannel = channelLimit != null;
+        this.channelLimit = channelLimit;
+        this.channelWeight = channelWeight;
+    }
+
+    /**
+     * Run the task once a thread is free for it.
+     *
+     * @param task    to run
+     * @param channel the channel of the transaction
+     * @param query   true if the task is a query
+     */
+    synchronized void execute(final Runnable task, final String channel, final boolean query) {
+        if (running >= concurrency.getAsInt() && queued >= queueSize) {
+            throw new RejectedExecutionException("Too many tasks waiting to run");
+        }
+
+        final Lanes lanes = channels.computeIfAbsent(perChannel ? channel : ALL_CHANNELS, Lanes::new);
+        if (lanes.size() == 0) {
+            turns.add(lanes);
+        }
+        final Deque<Runnable> lane = query ? lanes.queries : lanes.submits;
+        lane.add(task);
+        queued++;
+
+        final RejectedExecutionException rejected = dispatch();
+        // only this task is rejected; any other the executor turned down waits
+        // for the next to complete
+        if (rejected != null && lane.removeLastOccurrence(task)) {
+            queued--;
+            if (lanes.size() == 0) {
+                turns.remove(lanes);
+                lanes.turn = 0;
+                if (lanes.running == 0) {
+                    channels.remove(lanes.channel);
+                }
+            }
+            throw rejected;
+        }
+    }
+
+    private synchronized void completed(final Lanes lanes) {
+        running--;
+        lanes.running--;
+        if (lanes.running == 0 && lanes.size() == 0) {
+            channels.remove(lanes.channel);
+        }
+        // a task the executor turns down stays queued, to be tried again
+        dispatch();
+    }
+
+    /**
+     * Hand waiting tasks to the executor while it has threads free.
+     *
+     * @return the exception if the executor rejected a task, which is then
+     *         back at the head of its lane; otherwise null
+     */
+    private RejectedExecutionException dispatch() {
+        // channels passed over since a task was last run, as they are at their limit
+        int skipped = 0;
+        while (running < concurrency.getAsInt() && skipped < turns.size()) {
+            final Lanes lanes = turns.peek();
+            if (lanes.running >= lanes.limit) {
+                endTurn();
+                skipped++;
+                continue;
+            }
+
+            final int queriesInARow = lanes.queriesInARow;
+            final int turn = lanes.turn;
+            final boolean query = lanes.nextIsQuery();
+            final Runnable task = lanes.next();
+            queued--;
+            lanes.turn++;
+            if (lanes.size() == 0) {
+                turns.poll();
+                lanes.turn = 0;
+            } else if (lanes.turn >= lanes.weight) {
+                endTurn();
+            }
+            skipped = 0;
+
+            try {
+                run(lanes, task);
+            } catch (final RejectedExecutionException e) {
+                // as it was before the task was taken
+                (query ? lanes.queries : lanes.submits).addFirst(task);
+                lanes.queriesInARow = queriesInARow;
+                lanes.turn = turn;
+                queued++;
+                turns.remove(lanes);
+                turns.addFirst(lanes);
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private void endTurn() {
+        final Lanes lanes = turns.poll();
+        lanes.turn = 0;
+        turns.add(lanes);
+    }
+
+    private void run(final Lanes lanes, final Runnable task) {
+        running++;
+        lanes.running++;
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    completed(lanes);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            running--;
+            lanes.running--;
+            throw e;
+        }
+    }
+
+    /**
+     *
+     * @return queries waiting to run
+     */
+    synchronized int getQueryQueueCount() {
+        return channels.values().stream().mapToInt(lanes -> lanes.queries.size()).sum();
+    }
+
+    /**
+     *
+     * @return submits waiting to run
+     */
+    synchronized int getSubmitQueueCount() {
+        return channels.values().stream().mapToInt(lanes -> lanes.submits.size()).sum();
+    }
+
+    @Override
+    public synchronized int getCurrentTaskCount() {
+        return running;
+    }
+
+    @Override
+    public synchronized int getCurrentQueueCount() {
+        return queued + executorMetrics.getCurrentQueueCount();
+    }
+
+    @Override
+    public synchronized Map<String, Integer> getChannelQueueCounts() {
+        if (!perChannel) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Integer> counts = new HashMap<>();
+        turns.forEach(lanes -> counts.put(lanes.channel, lanes.size()));
+        return counts;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return executorMetrics.getActiveCount();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return executorMetrics.getPoolSize();
+    }
+
+    @Override
+    public int getCorePoolSize() {
+        return executorMetrics.getCorePoolSize();
+    }
+
+    @Override
+    public int getLargestPoolSize() {
+        return executorMetrics.getLargestPoolSize();
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return executorMetrics.getMaximumPoolSize();
+    }
+}
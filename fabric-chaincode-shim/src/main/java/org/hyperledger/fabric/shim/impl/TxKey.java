@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+
+/**
+ * Identifies a transaction by its channel id and transaction id.
+ *
+ * This is looked up for every message from the peer, on the thread reading
+ * them, so it holds the ids the message was parsed into rather than copying
+ * them into a new String joining the two. Each is hashed once.
+ */
+final class TxKey {
+    private final String channelId;
+    private final String txId;
+    private final int hash;
+
+    private TxKey(final String channelId, final String txId) {
+        this.channelId = channelId;
+        this.txId = txId;
+        final int prime = 31;
+        this.hash = prime * channelId.hashCode() + txId.hashCode();
+    }
+
+    /**
+     *
+     * @param message from or to the peer
+     * @return key of the transaction the message is for
+     */
+    static TxKey of(final ChaincodeMessage message) {
+        return new TxKey(message.getChannelId(), message.getTxid());
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof TxKey)) {
+            return false;
+        }
+        final TxKey other = (TxKey) obj;
+        return hash == other.hash && txId.equals(other.txId) && channelId.equals(other.channelId);
+    }
+
+    @Override
+    public String toString() {
+        return channelId + txId;
+    }
+}
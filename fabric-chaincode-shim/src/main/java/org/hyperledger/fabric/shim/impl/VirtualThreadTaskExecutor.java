@@ -0,0 +1,291 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.metrics.TaskMetricsCollector;
+
+/**
+ * Runs each task on a virtual thread of its own.
+ *
+ * Transactions spend most of their time waiting on the peer, so rather than
+ * queueing behind a small pool of threads each one is given a thread when it
+ * arrives. A semaphore caps how many run at once; the rest wait for a permit on
+ * their own thread, and up to queueSize may be waiting before new tasks are
+ * rejected.
+ *
+ * A JVM without virtual threads (before Java 21) can only use this executor
+ * with a thread factory of its own.
+ */
+public final class VirtualThreadTaskExecutor extends AbstractExecutorService implements TaskMetricsCollector {
+    private static Logger logger = Logger.getLogger(VirtualThreadTaskExecutor.class.getName());
+
+    private static final String THREAD_NAME_PREFIX = "fabric-txinvoke-";
+
+    private final ThreadFactory threadFactory;
+    private final int maxConcurrency;
+    private final int queueSize;
+    private final Semaphore permits;
+
+    // Tasks accepted and not yet finished, tasks waiting for a permit, and tasks
+    // running
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger largest = new AtomicInteger();
+
+    // Guards shutdown, and adding and removing threads, so that termination can
+    // be waited for
+    private final Object lock = new Object();
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private volatile boolean shutdown;
+    // Tasks not yet started, by the thread that will run them; a task runs only
+    // if its thread takes it out, and shutdownNow() drains the rest
+    private final Map<Thread, Runnable> notStarted = new ConcurrentHashMap<>();
+
+    /**
+     *
+     * @param maxConcurrency Number of tasks that may run at once
+     * @param queueSize      Number of tasks that may be waiting to run before
+     *                       more are rejected
+     * @throws UnsupportedOperationException if this JVM does not have virtual
+     *                                       threads
+     */
+    public VirtualThreadTaskExecutor(final int maxConcurrency, final int queueSize) {
+        this(maxConcurrency, queueSize, virtualThreadFactory());
+    }
+
+    /**
+     *
+     * @param maxConcurrency Number of tasks that may run at once
+     * @param queueSize      Number of tasks that may be waiting to run before
+     *                       more are rejected
+     * @param threadFactory  Creates the thread for each task
+     */
+    public VirtualThreadTaskExecutor(final int maxConcurrency, final int queueSize, final ThreadFactory threadFactory) {
+        if (maxConcurrency <= 0 || queueSize < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.queueSize = queueSize;
+        this.permits = new Semaphore(maxConcurrency);
+        this.threadFactory = threadFactory;
+        logger.info(() -> "Thread per task executor created, max concurrency " + maxConcurrency);
+    }
+
+    /**
+     *
+     * @return true if this JVM has virtual threads, and they can be used; on
+     *         Java 19 and 20 they are a preview feature, and need to be enabled
+     */
+    static boolean isAvailable() {
+        try {
+            virtualThreadFactory();
+            return true;
+        } catch (final UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A factory for virtual threads.
+     *
+     * @return ThreadFactory
+     * @throws UnsupportedOperationException if this JVM does not have virtual
+     *                                       threads
+     */
+    static ThreadFactory virtualThreadFactory() {
+        // Looked up reflectively as the shim is still built for Java 8
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builderClass.getMethod("name", String.class, long.class).invoke(builder, THREAD_NAME_PREFIX, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (final ReflectiveOperationException e) {
+            // a platform thread for every waiting task would be far too many
+            throw new UnsupportedOperationException("Virtual threads are not available in this JVM", e);
+        }
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+
+        if (outstanding.incrementAndGet() > maxConcurrency + queueSize) {
+            outstanding.decrementAndGet();
+            throw new RejectedExecutionException("Too many tasks waiting to run");
+        }
+
+        waiting.incrementAndGet();
+        final Thread thread = threadFactory.newThread(() -> runTask(command));
+        synchronized (lock) {
+            if (shutdown) {
+                waiting.decrementAndGet();
+                outstanding.decrementAndGet();
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+            threads.add(thread);
+            notStarted.put(thread, command);
+            // started while holding the lock, as interrupting a thread before it has
+            // started has no effect and shutdownNow() would miss it
+            thread.start();
+        }
+    }
+
+    private void runTask(final Runnable command) {
+        try {
+            try {
+                permits.acquire();
+            } finally {
+                waiting.decrementAndGet();
+            }
+            // a permit freed by an interrupted task may be taken before this
+            // thread is interrupted too, but the task has then been drained
+            if (notStarted.remove(Thread.currentThread()) == null) {
+                permits.release();
+                throw new InterruptedException();
+            }
+
+            try {
+                largest.accumulateAndGet(running.incrementAndGet(), Math::max);
+                command.run();
+            } finally {
+                running.decrementAndGet();
+                permits.release();
+            }
+        } catch (final InterruptedException e) {
+            // only expected from shutdownNow(), which returns the task
+            logger.warning(() -> "Interrupted waiting to run task");
+        } finally {
+            outstanding.decrementAndGet();
+            synchronized (lock) {
+                notStarted.remove(Thread.currentThread());
+                threads.remove(Thread.currentThread());
+                lock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Interrupts every task, those waiting to run are never started.
+     *
+     * @return the tasks that were waiting to run
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        final List<Runnable> drained = new ArrayList<>();
+        synchronized (lock) {
+            shutdown = true;
+            for (final Thread thread : notStarted.keySet()) {
+                final Runnable task = notStarted.remove(thread);
+                if (task != null) {
+                    drained.add(task);
+                }
+            }
+            threads.forEach(Thread::interrupt);
+            lock.notifyAll();
+        }
+        return drained;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && threads.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (lock) {
+            while (!isTerminated()) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public int getCurrentTaskCount() {
+        return running.get();
+    }
+
+    /**
+     * Tasks that have a thread, but are waiting for a permit to run.
+     */
+    @Override
+    public int getCurrentQueueCount() {
+        return waiting.get();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return running.get();
+    }
+
+    /**
+     * Threads alive, both running tasks and waiting to.
+     */
+    @Override
+    public int getPoolSize() {
+        return threads.size();
+    }
+
+    /**
+     * No threads are kept when there are no tasks.
+     */
+    @Override
+    public int getCorePoolSize() {
+        return 0;
+    }
+
+    /**
+     * Largest number of tasks that have run at once.
+     */
+    @Override
+    public int getLargestPoolSize() {
+        return largest.get();
+    }
+
+    /**
+     * Number of tasks that may run at once.
+     */
+    @Override
+    public int getMaximumPoolSize() {
+        return maxConcurrency;
+    }
+
+}
@@ -6,6 +6,10 @@
 
 package org.hyperledger.fabric.shim.ledger;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
 /**
  * Query Result associating a state key with a value.
  */
@@ -32,4 +36,24 @@ public interface KeyValue {
      */
     String getStringValue();
 
+    /**
+     * Returns the state value without copying it, where the implementation
+     * allows.
+     *
+     * @return value as a read-only buffer
+     */
+    default ByteBuffer getValueBuffer() {
+        return ByteBuffer.wrap(getValue()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the state value as a stream, without copying it, where the
+     * implementation allows.
+     *
+     * @return stream of the value
+     */
+    default InputStream getValueStream() {
+        return new ByteArrayInputStream(getValue());
+    }
+
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.shim.ledger;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+
+/**
+ * The results of a paginated query, every page of them, fetched one after
+ * another using the bookmark each page returns. Each page is asked for as soon
+ * as the bookmark for it is known, so where the stub allows it arrives while
+ * the chaincode works through the page before.
+ *
+ * A budget of records and of bytes (of values) can be given, to bound how
+ * long the query takes and how much it reads. The last page is made smaller to
+ * stop at the record budget. The byte budget is checked between pages, so a
+ * page that takes the bytes over is still returned in full, and the page after
+ * it is not; should that page already have been asked for, it is closed
+ * unread. No page is asked for once the budget is used. The results then stop
+ * early, and
+ * {@link #getBookmark()} gives where to carry on from, such as in a later
+ * transaction.
+ *
+ * The peer lets go of a page once it has returned the last of its results, so
+ * a page read to the end needs no closing. Call close() when done, or use in a
+ * try-with-resources statement, to close a page left part read and any page
+ * asked for ahead.
+ */
+public final class PagedQueryResults implements QueryResultsIterator<KeyValue> {
+
+    private final BiFunction<String, Integer, Supplier<QueryResultsIteratorWithMetadata<KeyValue>>> pages;
+    private final int pageSize;
+    private final long maxRecords;
+    private final long maxBytes;
+
+    // The page being returned and the bookmark after it, and the page after
+    // that if asked for
+    private QueryResultsIteratorWithMetadata<KeyValue> currentPage;
+    private Iterator<KeyValue> current = Collections.emptyIterator();
+    private String bookmark;
+    private String nextBookmark;
+    private Supplier<QueryResultsIteratorWithMetadata<KeyValue>> nextPage;
+    private int nextPageSize;
+
+    // Records asked for, and records and bytes returned
+    private long requested;
+    private long records;
+    private long bytes;
+    private boolean truncated;
+    private boolean closed;
+
+    /**
+     *
+     * @param pages      Asks for the page at a bookmark, of the given size; the
+     *                   page is waited for when the supplier is called
+     * @param pageSize   Records in each page
+     * @param bookmark   Where to start, or empty for the beginning
+     * @param maxRecords Most records to return, 0 for no limit
+     * @param maxBytes   Bytes of values after which no more pages are returned,
+     *                   0 for no limit
+     */
+    public PagedQueryResults(final BiFunction<String, Integer, Supplier<QueryResultsIteratorWithMetadata<KeyValue>>> pages, final int pageSize,
+            final String bookmark, final long maxRecords, final long maxBytes) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.pages = pages;
+        this.pageSize = pageSize;
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.bookmark = bookmark == null ? "" : bookmark;
+        this.nextBookmark = this.bookmark;
+        requestNextPage();
+    }
+
+    private void requestNextPage() {
+        final long size = maxRecords > 0 ? Math.min(pageSize, maxRecords - requested) : pageSize;
+        if (size <= 0 || overBytes()) {
+            truncated = true;
+            return;
+        }
+        requested += size;
+        nextPageSize = (int) size;
+        nextPage = pages.apply(nextBookmark, nextPageSize);
+    }
+
+    private boolean advance() {
+        while (!current.hasNext()) {
+            if (currentPage != null) {
+                // read to the end, so already let go of by the peer
+                currentPage = null;
+                bookmark = nextBookmark;
+            }
+            if (nextPage == null) {
+                return false;
+            }
+            if (overBytes()) {
+                closeNextPage();
+                truncated = true;
+                return false;
+            }
+
+            currentPage = nextPage.get();
+            nextPage = null;
+            current = currentPage.iterator();
+
+            // a short page, or one without a bookmark, is the last
+            final QueryResponseMetadata metadata = currentPage.getMetadata();
+            nextBookmark = metadata.getBookmark();
+            if (metadata.getFetchedRecordsCount() >= nextPageSize && !nextBookmark.isEmpty()) {
+                requestNextPage();
+            }
+        }
+        return true;
+    }
+
+    private boolean overBytes() {
+        return maxBytes > 0 && bytes >= maxBytes;
+    }
+
+    // Waits for the page asked for ahead, only to close it
+    private void closeNextPage() {
+        final Supplier<QueryResultsIteratorWithMetadata<KeyValue>> page = nextPage;
+        nextPage = null;
+        try {
+            page.get().close();
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Iterator<KeyValue> iterator() {
+        return new Iterator<KeyValue>() {
+            @Override
+            public boolean hasNext() {
+                return !closed && advance();
+            }
+
+            @Override
+            public KeyValue next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final KeyValue kv = current.next();
+                records++;
+                bytes += kv.getValueBuffer().remaining();
+                return kv;
+            }
+        };
+    }
+
+    /**
+     *
+     * @return bookmark to carry on from after the pages returned in full, empty
+     *         if from the beginning
+     */
+    public String getBookmark() {
+        return bookmark;
+    }
+
+    /**
+     *
+     * @return true if the results stopped at the budget rather than at the end
+     *         of the query, in which case there may be more from
+     *         {@link #getBookmark()}
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     *
+     * @return results returned so far
+     */
+    public long getRecordCount() {
+        return records;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (currentPage != null && current.hasNext()) {
+            currentPage.close();
+        }
+        currentPage = null;
+        if (nextPage != null) {
+            closeNextPage();
+        }
+    }
+}
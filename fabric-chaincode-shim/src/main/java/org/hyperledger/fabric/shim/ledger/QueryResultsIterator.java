@@ -6,11 +6,32 @@
 
 package org.hyperledger.fabric.shim.ledger;
 
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * QueryResultsIterator allows a chaincode to iterate over a set of key/value pairs returned by range, execute and history queries.
  *
  * @param <T> the type of elements returned by the iterator
  */
 public interface QueryResultsIterator<T> extends Iterable<T>, AutoCloseable {
+
+    /**
+     * A sequential stream of the results, fetched from the peer only as the
+     * stream needs them. Closing the stream closes this iterator, so use it in
+     * a try-with-resources statement where the stream may not reach the end of
+     * the results, such as with findFirst or limit.
+     *
+     * @return stream of the results
+     */
+    default Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false).onClose(() -> {
+            try {
+                close();
+            } catch (final Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
 }
 
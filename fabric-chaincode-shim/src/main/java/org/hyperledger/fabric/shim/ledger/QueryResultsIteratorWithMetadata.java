@@ -6,6 +6,9 @@
 
 package org.hyperledger.fabric.shim.ledger;
 
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 import org.hyperledger.fabric.protos.peer.ChaincodeShim;
 
 /**
@@ -23,4 +26,22 @@ public interface QueryResultsIteratorWithMetadata<T> extends Iterable<T>, AutoCl
      * @return Query Metadata
      */
     ChaincodeShim.QueryResponseMetadata getMetadata();
+
+    /**
+     * A sequential stream of the results, fetched from the peer only as the
+     * stream needs them. Closing the stream closes this iterator, so use it in
+     * a try-with-resources statement where the stream may not reach the end of
+     * the results, such as with findFirst or limit.
+     *
+     * @return stream of the results
+     */
+    default Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false).onClose(() -> {
+            try {
+                close();
+            } catch (final Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
 }
@@ -10,6 +10,193 @@
  * <p>
  * The main interface to implement is {@link org.hyperledger.fabric.shim#ChaincodeBase}
  *
+ * <p>
+ * How transactions are run, and how the chaincode talks to the peer, can be
+ * tuned in the same `config.props` file as the metrics settings (see
+ * {@link org.hyperledger.fabric.metrics}). The thread pool is sized with
+ * TP_CORE_POOL_SIZE, TP_MAX_POOL_SIZE and TP_QUEUE_SIZE.
+ *
+ * Alternatively each transaction can be run on a thread of its own, a virtual
+ * thread when running on Java 21 or later:
+ *
+ * <pre>
+ * TP_EXECUTOR=virtual
+ * TP_MAX_CONCURRENCY=100
+ * </pre>
+ *
+ * As transactions spend most of their time waiting on the peer, far more of
+ * them can then be in progress at once. TP_MAX_CONCURRENCY limits how many run
+ * at once (100 is the default), up to TP_QUEUE_SIZE more wait to start, and the
+ * TP_CORE_POOL_SIZE, TP_MAX_POOL_SIZE and TP_KEEP_ALIVE_MS values are not used.
+ * The metrics then report the transactions running, and those waiting to run,
+ * in place of the thread pool. Contracts with the THREAD lifecycle then get a
+ * new instance for every transaction, as no thread runs more than one.
+ * TP_EXECUTOR defaults to 'pool'. On earlier versions of Java, without virtual
+ * threads, the thread pool is used.
+ *
+ * The thread pool can instead be resized as the chaincode runs:
+ *
+ * <pre>
+ * TP_ADAPTIVE_ENABLED=true
+ * TP_ADAPTIVE_MIN_POOL_SIZE=5
+ * TP_ADAPTIVE_MAX_POOL_SIZE=50
+ * TP_ADAPTIVE_INTERVAL_MS=1000
+ * </pre>
+ *
+ * Every interval the fraction of their time that transactions spent waiting
+ * for the peer is used to work out how many threads it takes to keep the
+ * processors busy. The pool grows towards that while transactions are queueing,
+ * and shrinks a thread at a time while they are not, staying between the min
+ * (TP_CORE_POOL_SIZE by default) and max sizes. Each change is passed to the
+ * metrics provider, and the default provider logs it.
+ *
+ * When the queue is full new transactions are rejected with an error. The
+ * chaincode can instead stop reading messages from the peer while transactions
+ * are queueing, so holding back the peer:
+ *
+ * <pre>
+ * CHAINCODE_FLOW_CONTROL_ENABLED=true
+ * TP_QUEUE_HIGH_WATER=2500
+ * TP_QUEUE_LOW_WATER=1250
+ * </pre>
+ *
+ * Reading stops when the high water number of transactions are waiting (half
+ * of TP_QUEUE_SIZE by default), and starts again when that has dropped to the
+ * low water number (half the high water mark by default). Responses to the
+ * stub calls of running transactions share the same stream, so messages are
+ * still read while those are outstanding, and the queue can go a little past
+ * the high water mark.
+ *
+ * Transactions are run in the order they arrive. Instead queries, transaction
+ * functions that are not submitted such as GetMetadata, can be run ahead of
+ * other transactions that are waiting:
+ *
+ * <pre>
+ * TP_SCHEDULER=priority
+ * TP_QUERY_WEIGHT=4
+ * </pre>
+ *
+ * While both are waiting, TP_QUERY_WEIGHT queries (4 by default) are run for
+ * each other transaction, so those are not held up indefinitely. Chaincode not
+ * using the contract API can say which functions are queries by overriding
+ * ChaincodeBase.isQueryFunction. TP_SCHEDULER defaults to 'fifo'.
+ *
+ * When the chaincode is used on several channels, each channel can instead
+ * have its transactions wait separately:
+ *
+ * <pre>
+ * TP_SCHEDULER=channel
+ * TP_CHANNEL_MAX_CONCURRENCY=3
+ * TP_CHANNEL_WEIGHT=1
+ * TP_CHANNEL_WEIGHT.mychannel=2
+ * </pre>
+ *
+ * Channels with transactions waiting take it in turns to run them, as many per
+ * turn as the channel's weight (1 by default), and no more at once than its
+ * max concurrency (unlimited by default). Either can be set for a particular
+ * channel by adding its name to the key. Within a channel, queries are run
+ * ahead of other transactions as with 'priority'. The metrics then also report
+ * the number of transactions waiting on each channel.
+ *
+ * The same file can also hold settings that affect how each transaction talks
+ * to the peer:
+ *
+ * <pre>
+ * CHAINCODE_STATE_CACHE_ENABLED=false
+ * CHAINCODE_WRITE_BUFFER_ENABLED=false
+ * CHAINCODE_QUERY_PREFETCH=0
+ * </pre>
+ *
+ * With the state cache enabled (it's off by default) getState and
+ * getPrivateData only go to the peer the first time a transaction asks for a
+ * key. Later reads, and reads of keys the transaction has itself put or
+ * deleted, are answered from within the transaction. Note the peer itself does
+ * not return a transaction's own writes, so only enable this if no contract
+ * relies on that behaviour.
+ *
+ * With the write buffer enabled (it's off by default) putState, delState and
+ * the other ledger writes return straight away. They are sent to the peer, in
+ * order, once the chaincode has returned and before the transaction is
+ * reported as complete. Only the last write to each key is sent. A write the
+ * peer rejects then fails the transaction as a whole, rather than failing the
+ * call that made it.
+ *
+ * The peer returns query results a page at a time. With a query prefetch set,
+ * the iterator asks for the next page once that many results are left in the
+ * current one, rather than when the chaincode reaches the end of it. Set it to
+ * the page size (100 unless the peer is configured otherwise) or more to ask
+ * as soon as a page is started. Other calls to the peer made while a page is
+ * on its way wait for it.
+ *
+ * Transactions can also be given deadlines, in milliseconds:
+ *
+ * <pre>
+ * CHAINCODE_TX_TIMEOUT_MS=30000
+ * CHAINCODE_STUB_TIMEOUT_MS=10000
+ * </pre>
+ *
+ * A transaction that has not completed this long after it arrived, or that has
+ * waited this long for the peer to answer one of its stub calls, is cancelled.
+ * The peer is sent an ERROR for it, its stub calls fail and the thread running
+ * it is interrupted, so that a hung transaction doesn't hold a thread for ever.
+ * Both default to 0, no deadline.
+ *
+ * The connection to the peer is checked in two ways:
+ *
+ * <pre>
+ * CHAINCODE_GRPC_KEEPALIVE_TIME_MS=60000
+ * CHAINCODE_GRPC_KEEPALIVE_TIMEOUT_MS=20000
+ * CHAINCODE_IDLE_TIMEOUT_MS=0
+ * </pre>
+ *
+ * gRPC pings the peer when the connection has been quiet for the keepalive
+ * time, and fails the stream if there's no answer within the timeout. The peer
+ * by default refuses pings more often than once a minute. Set the time to 0 to
+ * not ping at all.
+ *
+ * With an idle timeout set, the stream is also cancelled if the peer has sent
+ * nothing for that long while the chaincode is waiting for a response from it.
+ * That catches a peer that still answers pings but no longer answers the
+ * chaincode. If the peer sends KEEPALIVE messages, set the timeout above the
+ * peer's chaincode keepalive interval, and any silence that long also cancels
+ * the stream.
+ *
+ * Normally once the stream fails the chaincode stops, and the peer starts it
+ * again when next needed. It can instead connect again itself:
+ *
+ * <pre>
+ * CHAINCODE_RECONNECT_ENABLED=true
+ * CHAINCODE_RECONNECT_INITIAL_BACKOFF_MS=1000
+ * CHAINCODE_RECONNECT_MAX_BACKOFF_MS=30000
+ * CHAINCODE_RECONNECT_MAX_ATTEMPTS=10
+ * </pre>
+ *
+ * The chaincode registers with the peer again over a new channel, keeping the
+ * JVM, and the contracts and anything else already loaded. Attempts are spaced
+ * out from the initial backoff, doubling up to the maximum. After the maximum
+ * number of attempts in a row without reaching the ready state (10 by default,
+ * 0 for no limit) the chaincode gives up and stops, so that the peer can start
+ * it again.
+ *
+ * All messages to and from the peer go over a single stream. As an experiment,
+ * more can be opened, each on its own channel to the peer:
+ *
+ * <pre>
+ * CHAINCODE_GRPC_STREAMS=1
+ * CHAINCODE_GRPC_STREAMS_EXPERIMENTAL=false
+ * </pre>
+ *
+ * The peer must accept more than one registration of the same chaincode;
+ * Fabric peers up to now reject all but the first. So more than one stream is
+ * only opened with CHAINCODE_GRPC_STREAMS_EXPERIMENTAL=true, and otherwise a
+ * warning is logged and one stream is used. Each stream registers with the
+ * peer, keeps its own registration state, and has its own thread pool and
+ * settings above, so the limits apply per stream. The chaincode is ready once
+ * any stream is. The peer chooses which stream each transaction arrives on, and
+ * everything for that transaction then stays on that stream. The task metrics
+ * are those of all the streams registered and not yet shut down, added
+ * together.
+ *
  * @see <a href="https://hyperledger-fabric.readthedocs.io/en/release-1.4/developapps/developing_applications.html">Developing Fabric Applications</a>
  *
  */
@@ -153,6 +153,18 @@ public class ContractRouterTest {
         assertThat(SampleContract.getT1Invoked(), is(0));
     }
 
+    @Test
+    public void testIsQueryFunction() {
+        final ContractRouter r = new ContractRouter(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        r.findAllContracts();
+
+        assertThat(r.isQueryFunction("org.hyperledger.fabric:GetMetadata"), is(true));
+        assertThat(r.isQueryFunction("samplecontract:t4"), is(false));
+        assertThat(r.isQueryFunction("samplecontract:unknown"), is(false));
+        assertThat(r.isQueryFunction("nocontract:t4"), is(false));
+        assertThat(r.isQueryFunction(""), is(false));
+    }
+
     /**
      * Test invoking two transaction functions in a contract via default name name
      */
@@ -22,7 +22,9 @@ import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.ContractRuntimeException;
 import org.hyperledger.fabric.contract.execution.impl.ContractExecutionService;
+import org.hyperledger.fabric.contract.routing.ContractDefinition;
 import org.hyperledger.fabric.contract.routing.TxFunction;
+import org.hyperledger.fabric.contract.routing.impl.ContractDefinitionImpl;
 import org.hyperledger.fabric.shim.Chaincode.Response;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.junit.Rule;
@@ -53,7 +55,9 @@ public class ContractExecutionServiceTest {
 
         when(txFn.getRouting()).thenReturn(routing);
         when(req.getArgs()).thenReturn(new ArrayList<byte[]>());
-        when(routing.getMethod()).thenReturn(SampleContract.class.getMethod("noReturn", new Class<?>[] {Context.class}));
+        final ContractDefinition cd = new ContractDefinitionImpl(SampleContract.class);
+        final TxFunction noReturn = cd.addTxFunction(SampleContract.class.getMethod("noReturn", new Class<?>[] {Context.class}));
+        when(routing.getMethodHandle()).thenReturn(noReturn.getRouting().getMethodHandle());
         when(routing.getContractInstance()).thenReturn(contract);
         ces.executeRequest(txFn, req, stub);
 
@@ -6,9 +6,12 @@
 package org.hyperledger.fabric.contract.metadata;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import org.everit.json.schema.Schema;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.routing.DataTypeDefinition;
 import org.hyperledger.fabric.contract.routing.TypeRegistry;
@@ -237,4 +240,19 @@ public class TypeSchemaTest {
         ts.validate(json);
 
     }
+
+    @Test
+    public void compiledSchema() {
+        final TypeSchema ts = TypeSchema.typeConvert(org.hyperledger.fabric.contract.MyType.class);
+        MetadataBuilder.addComponent(new DataTypeDefinitionImpl(org.hyperledger.fabric.contract.MyType.class));
+
+        final Schema schema = ts.getCompiledSchema();
+        assertThat(ts.getCompiledSchema(), sameInstance(schema));
+
+        // adding a new component means the schema has to be reloaded
+        MetadataBuilder.addComponent(new DataTypeDefinitionImpl(org.hyperledger.fabric.contract.MyType2.class));
+        final Schema reloaded = ts.getCompiledSchema();
+        assertThat(reloaded, not(sameInstance(schema)));
+        assertThat(ts.getCompiledSchema(), sameInstance(reloaded));
+    }
 }
@@ -6,18 +6,46 @@
 package org.hyperledger.fabric.contract.routing;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.security.Permission;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.contract.ChaincodeStubNaiveImpl;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.ContractRuntimeException;
 import org.hyperledger.fabric.contract.annotation.Contract;
 import org.hyperledger.fabric.contract.annotation.Info;
+import org.hyperledger.fabric.contract.annotation.Transaction;
+import org.hyperledger.fabric.contract.execution.ExecutionFactory;
+import org.hyperledger.fabric.contract.execution.ExecutionService;
+import org.hyperledger.fabric.contract.execution.InvocationRequest;
+import org.hyperledger.fabric.contract.execution.JSONTransactionSerializer;
 import org.hyperledger.fabric.contract.routing.impl.ContractDefinitionImpl;
+import org.hyperledger.fabric.shim.Chaincode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.impl.InvocationTaskExecutor;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -98,4 +126,100 @@ public class ContractDefinitionTest {
         cf.addTxFunction(m);
         cf.addTxFunction(m);
     }
+
+    /** The threads each contract instance handled invocations on */
+    private static final Map<ContractInterface, Set<Thread>> HANDLED = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    @Contract(name = "perTransaction")
+    public static class PerTransactionContract implements ContractInterface {
+        @Transaction
+        public final String add(final Context ctx, final int a, final int b) {
+            HANDLED.computeIfAbsent(this, k -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread());
+            return ctx.getStub().getTxId() + ":" + (a + b);
+        }
+    }
+
+    @Contract(name = "singleton", lifecycle = Contract.Lifecycle.SINGLETON)
+    public static class SingletonContract extends PerTransactionContract {
+    }
+
+    @Contract(name = "perThread", lifecycle = Contract.Lifecycle.THREAD)
+    public static class PerThreadContract extends PerTransactionContract {
+    }
+
+    @Test
+    public void lifecycle() throws Exception {
+        final ContractDefinition perTransaction = new ContractDefinitionImpl(PerTransactionContract.class);
+        assertThat(perTransaction.getContractInstance(), not(sameInstance(perTransaction.getContractInstance())));
+
+        final ContractDefinition singleton = new ContractDefinitionImpl(SingletonContract.class);
+        final ContractInterface instance = singleton.getContractInstance();
+        assertThat(singleton.getContractInstance(), sameInstance(instance));
+        assertThat(CompletableFuture.supplyAsync(() -> getInstance(singleton)).get(), sameInstance(instance));
+
+        final ContractDefinition perThread = new ContractDefinitionImpl(PerThreadContract.class);
+        final ContractInterface threadInstance = perThread.getContractInstance();
+        assertThat(perThread.getContractInstance(), sameInstance(threadInstance));
+        assertThat(CompletableFuture.supplyAsync(() -> getInstance(perThread)).get(), not(sameInstance(threadInstance)));
+    }
+
+    @Test
+    public void concurrentExecution() throws Exception {
+        final List<String> expected = execute(PerTransactionContract.class, 200);
+        assertThat(HANDLED.size(), equalTo(200));
+
+        assertThat(execute(SingletonContract.class, 200), equalTo(expected));
+        assertThat(HANDLED.size(), equalTo(1));
+
+        assertThat(execute(PerThreadContract.class, 200), equalTo(expected));
+        assertThat(HANDLED.size(), lessThanOrEqualTo(5));
+        for (final Set<Thread> threads : HANDLED.values()) {
+            assertThat(threads.size(), equalTo(1));
+        }
+    }
+
+    private static ContractInterface getInstance(final ContractDefinition contract) {
+        try {
+            return contract.getContractInstance();
+        } catch (final ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs a number of transactions against the contract on the same style of
+     * executor used for chaincode invocations, recording in HANDLED the contract
+     * instances that handled them
+     */
+    private List<String> execute(final Class<? extends ContractInterface> contractClass, final int count) throws Exception {
+        final ContractDefinition contract = new ContractDefinitionImpl(contractClass);
+        final TxFunction txFn = contract.addTxFunction(contractClass.getMethod("add", Context.class, int.class, int.class));
+        final ExecutionService executionService = ExecutionFactory.getInstance().createExecutionService(new JSONTransactionSerializer());
+        HANDLED.clear();
+
+        final InvocationTaskExecutor executor = new InvocationTaskExecutor(5, 5, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                Executors.defaultThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+        try {
+            final List<CompletableFuture<String>> results = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                final byte[] arg = Integer.toString(i).getBytes(StandardCharsets.UTF_8);
+                final InvocationRequest request = mock(InvocationRequest.class);
+                when(request.getArgs()).thenReturn(Arrays.asList(arg, arg));
+
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    final ChaincodeStub stub = new ChaincodeStubNaiveImpl();
+                    final Chaincode.Response response = executionService.executeRequest(txFn, request, stub);
+                    return response.getStringPayload();
+                }, executor));
+            }
+
+            final List<String> payloads = new ArrayList<>();
+            for (final CompletableFuture<String> result : results) {
+                payloads.add(result.get());
+            }
+            return payloads;
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -8,10 +8,13 @@ package org.hyperledger.fabric.contract.routing;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
+import java.lang.invoke.MethodHandle;
+
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.ContractRuntimeException;
@@ -43,6 +46,11 @@ public class TxFunctionTest {
 
         }
 
+        @Transaction()
+        public String testMethod3(final Context ctx, final int arg1, final String arg2) {
+            return arg2 + arg1;
+        }
+
         @Transaction()
         public void wibble(final String arg1) {
 
@@ -98,4 +106,19 @@ public class TxFunctionTest {
 
     }
 
+    @Test
+    public void methodHandle() throws Throwable {
+        final TestObject test = new TestObject();
+        final ContractDefinition cd = mock(ContractDefinition.class);
+        Mockito.when(cd.getAnnotation()).thenReturn(test.getClass().getAnnotation(Contract.class));
+        final Context ctx = mock(Context.class);
+
+        final TxFunction txfn = new TxFunctionImpl(test.getClass().getMethod("testMethod3", new Class<?>[] {Context.class, int.class, String.class}), cd);
+        final MethodHandle handle = txfn.getRouting().getMethodHandle();
+        assertEquals("answer42", handle.invokeExact((ContractInterface) test, new Object[] {ctx, 42, "answer"}));
+
+        final TxFunction voidfn = new TxFunctionImpl(test.getClass().getMethod("testMethod1", new Class<?>[] {Context.class}), cd);
+        assertNull(voidfn.getRouting().getMethodHandle().invokeExact((ContractInterface) test, new Object[] {ctx}));
+    }
+
 }
@@ -5,9 +5,11 @@
  */
 package org.hyperledger.fabric.shim.fvt;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.Matchers.is;
 import static org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type.COMPLETED;
 import static org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type.ERROR;
+import static org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type.GET_STATE;
 import static org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type.INIT;
 import static org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type.READY;
 import static org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type.REGISTER;
@@ -18,12 +20,17 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.hyperledger.fabric.protos.peer.Chaincode;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim;
@@ -47,6 +54,7 @@ import org.hyperledger.fabric.shim.mock.peer.GetStateByRangeStep;
 import org.hyperledger.fabric.shim.mock.peer.GetStateMetadata;
 import org.hyperledger.fabric.shim.mock.peer.GetValueStep;
 import org.hyperledger.fabric.shim.mock.peer.InvokeChaincodeStep;
+import org.hyperledger.fabric.shim.mock.peer.NoResponseStep;
 import org.hyperledger.fabric.shim.mock.peer.PutStateMetadata;
 import org.hyperledger.fabric.shim.mock.peer.PutValueStep;
 import org.hyperledger.fabric.shim.mock.peer.QueryCloseStep;
@@ -195,6 +203,466 @@ public final class ChaincodeFVTest {
         assertThat(ProposalResponsePackage.Response.parseFrom(server.getLastMessageRcvd().getPayload()).getMessage(), is("OK response2"));
     }
 
+    @Test
+    public void testStateCache() throws Exception {
+        final ChaincodeBase cb = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                final String first = stub.getStringState("a");
+                final String second = stub.getStringState("a");
+                stub.putState("a", ByteString.copyFromUtf8("120").toByteArray());
+                final String third = stub.getStringState("a");
+                stub.delState("a");
+                final int fourth = stub.getState("a").length;
+                return ResponseUtils.newSuccessResponse(first + "," + second + "," + third + "," + fourth);
+            }
+
+            @Override
+            public Properties getChaincodeConfig() {
+                final Properties props = super.getChaincodeConfig();
+                props.setProperty("CHAINCODE_STATE_CACHE_ENABLED", "true");
+                return props;
+            }
+        };
+
+        final List<ScenarioStep> scenario = new ArrayList<>();
+        scenario.add(new RegisterStep());
+        scenario.add(new GetValueStep("100"));
+        scenario.add(new PutValueStep("120"));
+        scenario.add(new DelValueStep());
+        scenario.add(new CompleteStep());
+
+        server = ChaincodeMockPeer.startServer(scenario);
+
+        cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
+
+        final ByteString invokePayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("invoke"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "0", invokePayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 5, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(COMPLETED));
+        assertThat(ProposalResponsePackage.Response.parseFrom(server.getLastMessageRcvd().getPayload()).getMessage(), is("100,100,120,0"));
+    }
+
+    @Test
+    public void testStateCacheDisabledByDefault() throws Exception {
+        final ChaincodeBase cb = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                final String first = stub.getStringState("a");
+                final String second = stub.getStringState("a");
+                stub.putState("a", ByteString.copyFromUtf8("120").toByteArray());
+                final String third = stub.getStringState("a");
+                return ResponseUtils.newSuccessResponse(first + "," + second + "," + third);
+            }
+        };
+
+        final List<ScenarioStep> scenario = new ArrayList<>();
+        scenario.add(new RegisterStep());
+        scenario.add(new GetValueStep("100"));
+        scenario.add(new GetValueStep("100"));
+        scenario.add(new PutValueStep("120"));
+        scenario.add(new GetValueStep("100"));
+        scenario.add(new CompleteStep());
+
+        server = ChaincodeMockPeer.startServer(scenario);
+
+        cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
+
+        final ByteString invokePayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("invoke"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "0", invokePayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 6, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(COMPLETED));
+        assertThat(ProposalResponsePackage.Response.parseFrom(server.getLastMessageRcvd().getPayload()).getMessage(), is("100,100,100"));
+    }
+
+    @Test
+    public void testFlowControl() throws Exception {
+        final ChaincodeBase cb = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                final String value = stub.getStringState("a");
+                stub.putState("a", ByteString.copyFromUtf8("120").toByteArray());
+                return ResponseUtils.newSuccessResponse(value);
+            }
+
+            @Override
+            public Properties getChaincodeConfig() {
+                final Properties props = super.getChaincodeConfig();
+                props.setProperty("CHAINCODE_FLOW_CONTROL_ENABLED", "true");
+                props.setProperty("TP_CORE_POOL_SIZE", "1");
+                props.setProperty("TP_MAX_POOL_SIZE", "1");
+                props.setProperty("TP_QUEUE_HIGH_WATER", "1");
+                props.setProperty("TP_QUEUE_LOW_WATER", "0");
+                return props;
+            }
+        };
+
+        final List<ScenarioStep> scenario = new ArrayList<>();
+        scenario.add(new RegisterStep());
+        scenario.add(new GetValueStep("100"));
+        scenario.add(new PutValueStep("120"));
+        scenario.add(new CompleteStep());
+
+        server = ChaincodeMockPeer.startServer(scenario);
+
+        cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
+
+        final ByteString invokePayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("invoke"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "0", invokePayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 4, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(COMPLETED));
+        assertThat(ProposalResponsePackage.Response.parseFrom(server.getLastMessageRcvd().getPayload()).getMessage(), is("100"));
+    }
+
+    @Test
+    public void testTransactionTimeout() throws Exception {
+        final ChaincodeBase cb = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                if ("0".equals(stub.getTxId())) {
+                    try {
+                        Thread.sleep(Long.MAX_VALUE);
+                    } catch (final InterruptedException e) {
+                        return ResponseUtils.newSuccessResponse("interrupted");
+                    }
+                }
+                return ResponseUtils.newSuccessResponse(stub.getStringState("a"));
+            }
+
+            @Override
+            public Properties getChaincodeConfig() {
+                final Properties props = super.getChaincodeConfig();
+                props.setProperty("CHAINCODE_TX_TIMEOUT_MS", "500");
+                props.setProperty("TP_CORE_POOL_SIZE", "1");
+                props.setProperty("TP_MAX_POOL_SIZE", "1");
+                return props;
+            }
+        };
+
+        final List<ScenarioStep> scenario = new ArrayList<>();
+        scenario.add(new RegisterStep());
+        scenario.add(new ErrorResponseStep());
+        scenario.add(new GetValueStep("100"));
+        scenario.add(new CompleteStep());
+
+        server = ChaincodeMockPeer.startServer(scenario);
+
+        cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
+
+        final ByteString invokePayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("invoke"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "0", invokePayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 2, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(ERROR));
+        assertThat(server.getLastMessageRcvd().getTxid(), is("0"));
+
+        // the only thread has been freed for the next transaction
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "1", invokePayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 4, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(COMPLETED));
+        assertThat(ProposalResponsePackage.Response.parseFrom(server.getLastMessageRcvd().getPayload()).getMessage(), is("100"));
+    }
+
+    @Test
+    public void testStubCallTimeout() throws Exception {
+        final ChaincodeBase cb = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse(stub.getStringState("a"));
+            }
+
+            @Override
+            public Properties getChaincodeConfig() {
+                final Properties props = super.getChaincodeConfig();
+                props.setProperty("CHAINCODE_STUB_TIMEOUT_MS", "500");
+                return props;
+            }
+        };
+
+        final List<ScenarioStep> scenario = new ArrayList<>();
+        scenario.add(new RegisterStep());
+        scenario.add(new NoResponseStep(GET_STATE));
+        scenario.add(new ErrorResponseStep());
+
+        server = ChaincodeMockPeer.startServer(scenario);
+
+        cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
+
+        final ByteString invokePayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("invoke"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "0", invokePayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 3, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(ERROR));
+        assertThat(server.getLastMessageRcvd().getPayload().toStringUtf8(), is("No response from the peer within 500ms"));
+    }
+
+    @Test
+    public void testGetStatesTimeout() throws Exception {
+        final ChaincodeBase cb = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse(stub.getStates(Arrays.asList("a", "b")).toString());
+            }
+
+            @Override
+            public Properties getChaincodeConfig() {
+                final Properties props = super.getChaincodeConfig();
+                props.setProperty("CHAINCODE_STUB_TIMEOUT_MS", "500");
+                return props;
+            }
+        };
+
+        final List<ScenarioStep> scenario = new ArrayList<>();
+        scenario.add(new RegisterStep());
+        scenario.add(new NoResponseStep(GET_STATE));
+        scenario.add(new ErrorResponseStep());
+
+        server = ChaincodeMockPeer.startServer(scenario);
+
+        cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
+
+        final ByteString invokePayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("invoke"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "0", invokePayload, null));
+
+        // the multi-key read gives up as a single read would
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 3, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(ERROR));
+        assertThat(server.getLastMessageRcvd().getPayload().toStringUtf8(), is("No response from the peer within 500ms"));
+    }
+
+    @Test
+    public void testWriteBuffer() throws Exception {
+        final ChaincodeBase cb = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                stub.putState("a", ByteString.copyFromUtf8("100").toByteArray());
+                return ResponseUtils.newErrorResponse("Wrong response1");
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                stub.putState("a", ByteString.copyFromUtf8("100").toByteArray());
+                stub.putState("b", ByteString.copyFromUtf8("200").toByteArray());
+                stub.putState("a", ByteString.copyFromUtf8("120").toByteArray());
+                stub.delState("c");
+                return ResponseUtils.newSuccessResponse(stub.getStringState("a"));
+            }
+
+            @Override
+            public Properties getChaincodeConfig() {
+                final Properties props = super.getChaincodeConfig();
+                props.setProperty("CHAINCODE_WRITE_BUFFER_ENABLED", "true");
+                return props;
+            }
+        };
+
+        final List<ScenarioStep> scenario = new ArrayList<>();
+        scenario.add(new RegisterStep());
+        scenario.add(new ErrorResponseStep());
+        // the read goes to the peer, which hasn't been sent the writes
+        scenario.add(new GetValueStep("100"));
+        scenario.add(new PutValueStep("200"));
+        scenario.add(new PutValueStep("120"));
+        scenario.add(new DelValueStep());
+        scenario.add(new CompleteStep());
+
+        server = ChaincodeMockPeer.startServer(scenario);
+
+        cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
+
+        // a failed transaction never sends its writes
+        final ByteString initPayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("init"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(INIT, "testChannel", "0", initPayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 2, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(ERROR));
+
+        final ByteString invokePayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("invoke"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "1", invokePayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 7, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(COMPLETED));
+        assertThat(ProposalResponsePackage.Response.parseFrom(server.getLastMessageRcvd().getPayload()).getMessage(), is("100"));
+    }
+
+    @Test
+    public void testGetStateAsync() throws Exception {
+        final ChaincodeBase cb = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                final CompletableFuture<byte[]> a = stub.getStateAsync("a");
+                final CompletableFuture<byte[]> b = stub.getStateAsync("b");
+                final CompletableFuture<byte[]> d = stub.getPrivateDataAsync("collection", "d");
+                final String ac = new String(a.join(), UTF_8) + "," + stub.getStringState("c");
+                return ResponseUtils.newSuccessResponse(ac + "," + new String(b.join(), UTF_8) + "," + new String(d.join(), UTF_8));
+            }
+        };
+
+        final List<ScenarioStep> scenario = new ArrayList<>();
+        scenario.add(new RegisterStep());
+        scenario.add(new GetValueStep("1"));
+        scenario.add(new GetValueStep("2"));
+        scenario.add(new GetValueStep("3"));
+        scenario.add(new GetValueStep("4"));
+        scenario.add(new CompleteStep());
+
+        server = ChaincodeMockPeer.startServer(scenario);
+
+        cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
+
+        final ByteString invokePayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("invoke"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "0", invokePayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 6, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(COMPLETED));
+        // requests are sent one at a time in the order they were made: a, b, d, then c
+        assertThat(ProposalResponsePackage.Response.parseFrom(server.getLastMessageRcvd().getPayload()).getMessage(), is("1,4,2,3"));
+    }
+
+    @Test
+    public void testGetStateAsyncContinuation() throws Exception {
+        final ChaincodeBase cb = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                // the continuation calls the stub, and waits for the peer
+                final CompletableFuture<String> ab = stub.getStateAsync("a").thenApply(a -> new String(a, UTF_8) + "," + stub.getStringState("b"));
+                return ResponseUtils.newSuccessResponse(ab.join());
+            }
+        };
+
+        final List<ScenarioStep> scenario = new ArrayList<>();
+        scenario.add(new RegisterStep());
+        scenario.add(new GetValueStep("1"));
+        scenario.add(new GetValueStep("2"));
+        scenario.add(new CompleteStep());
+
+        server = ChaincodeMockPeer.startServer(scenario);
+
+        cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
+
+        final ByteString invokePayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("invoke"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "0", invokePayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 4, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(COMPLETED));
+        assertThat(ProposalResponsePackage.Response.parseFrom(server.getLastMessageRcvd().getPayload()).getMessage(), is("1,2"));
+    }
+
+    @Test
+    public void testGetStates() throws Exception {
+        final ChaincodeBase cb = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                final List<byte[]> states = stub.getStates(Arrays.asList("a", "b", "c"));
+                final List<byte[]> privateData = stub.getPrivateDataMultipleKeys("collection", Arrays.asList("d", "e"));
+                final List<byte[]> none = stub.getStates(Collections.emptyList());
+                return ResponseUtils.newSuccessResponse(Stream.concat(states.stream(), privateData.stream())
+                        .map(value -> new String(value, UTF_8)).collect(Collectors.joining(",")) + "," + none.size());
+            }
+        };
+
+        final List<ScenarioStep> scenario = new ArrayList<>();
+        scenario.add(new RegisterStep());
+        scenario.add(new GetValueStep("", "a", "1"));
+        scenario.add(new GetValueStep("", "b", "2"));
+        scenario.add(new GetValueStep("", "c", "3"));
+        scenario.add(new GetValueStep("collection", "d", "4"));
+        scenario.add(new GetValueStep("collection", "e", "5"));
+        scenario.add(new CompleteStep());
+
+        server = ChaincodeMockPeer.startServer(scenario);
+
+        cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
+
+        final ByteString invokePayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("invoke"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "0", invokePayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 7, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(COMPLETED));
+        assertThat(ProposalResponsePackage.Response.parseFrom(server.getLastMessageRcvd().getPayload()).getMessage(), is("1,2,3,4,5,0"));
+    }
+
     @Test
     public void testStateValidationParameter() throws Exception {
         final ChaincodeBase cb = new ChaincodeBase() {
@@ -334,6 +802,58 @@ public final class ChaincodeFVTest {
         assertThat(ProposalResponsePackage.Response.parseFrom(server.getLastMessageRcvd().getPayload()).getMessage(), is("OK response2"));
     }
 
+    @Test
+    public void testQueryPrefetch() throws Exception {
+        final ChaincodeBase cb = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                final StringBuilder keys = new StringBuilder();
+                try (QueryResultsIterator<KeyValue> stateByRange = stub.getStateByRange("a", "f")) {
+                    for (final KeyValue kv : stateByRange) {
+                        keys.append(kv.getKey());
+                    }
+                } catch (final Exception e) {
+                    fail("No exception expected");
+                }
+                return ResponseUtils.newSuccessResponse(keys.toString());
+            }
+
+            @Override
+            public Properties getChaincodeConfig() {
+                final Properties props = super.getChaincodeConfig();
+                props.setProperty("CHAINCODE_QUERY_PREFETCH", "1");
+                return props;
+            }
+        };
+
+        final List<ScenarioStep> scenario = new ArrayList<>();
+        scenario.add(new RegisterStep());
+        scenario.add(new GetStateByRangeStep(true, "a", "b"));
+        scenario.add(new QueryNextStep(true, "c", "d"));
+        scenario.add(new QueryNextStep(false, "e"));
+        scenario.add(new QueryCloseStep());
+        scenario.add(new CompleteStep());
+
+        server = ChaincodeMockPeer.startServer(scenario);
+
+        cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
+
+        final ByteString invokePayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("invoke"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "0", invokePayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 6, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(COMPLETED));
+        assertThat(ProposalResponsePackage.Response.parseFrom(server.getLastMessageRcvd().getPayload()).getMessage(), is("abcde"));
+    }
+
     @Test
     public void testGetQueryResult() throws Exception {
         final ChaincodeBase cb = new ChaincodeBase() {
@@ -599,6 +1119,153 @@ public final class ChaincodeFVTest {
         server = null;
     }
 
+    @Test
+    public void testTransportSettings() throws Exception {
+        final ChaincodeBase cb = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse(stub.getStringState("a"));
+            }
+
+            @Override
+            public Properties getChaincodeConfig() {
+                final Properties props = super.getChaincodeConfig();
+                props.setProperty("CHAINCODE_GRPC_TRANSPORT", "epoll");
+                props.setProperty("CHAINCODE_GRPC_EVENT_LOOP_THREADS", "1");
+                props.setProperty("CHAINCODE_GRPC_DIRECT_EXECUTOR", "true");
+                props.setProperty("CHAINCODE_GRPC_ALLOCATOR", "pooled");
+                return props;
+            }
+        };
+
+        final List<ScenarioStep> scenario = new ArrayList<>();
+        scenario.add(new RegisterStep());
+        scenario.add(new GetValueStep("100"));
+        scenario.add(new CompleteStep());
+
+        server = ChaincodeMockPeer.startServer(scenario);
+
+        cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
+
+        final ByteString invokePayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("invoke"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "0", invokePayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 3, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(COMPLETED));
+        assertThat(ProposalResponsePackage.Response.parseFrom(server.getLastMessageRcvd().getPayload()).getMessage(), is("100"));
+    }
+
+    @Test
+    public void testReconnect() throws Exception {
+        final ChaincodeBase cb = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse(stub.getStringState("a"));
+            }
+
+            @Override
+            public Properties getChaincodeConfig() {
+                final Properties props = super.getChaincodeConfig();
+                props.setProperty("CHAINCODE_RECONNECT_ENABLED", "true");
+                props.setProperty("CHAINCODE_RECONNECT_INITIAL_BACKOFF_MS", "100");
+                props.setProperty("CHAINCODE_RECONNECT_MAX_BACKOFF_MS", "200");
+                props.setProperty("CHAINCODE_RECONNECT_MAX_ATTEMPTS", "2");
+                return props;
+            }
+        };
+
+        final List<ScenarioStep> scenario = new ArrayList<>();
+        scenario.add(new RegisterStep());
+
+        server = ChaincodeMockPeer.startServer(scenario);
+
+        cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
+
+        // the peer goes away and comes back
+        server.stop();
+        final List<ScenarioStep> reconnectScenario = new ArrayList<>();
+        reconnectScenario.add(new RegisterStep());
+        reconnectScenario.add(new GetValueStep("100"));
+        reconnectScenario.add(new CompleteStep());
+        server = ChaincodeMockPeer.startServer(reconnectScenario);
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
+        assertThat(cb.getState(), is(ChaincodeBase.CCState.READY));
+
+        final ByteString invokePayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("invoke"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "0", invokePayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 3, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(COMPLETED));
+        assertThat(ProposalResponsePackage.Response.parseFrom(server.getLastMessageRcvd().getPayload()).getMessage(), is("100"));
+
+        // give up connecting before the next test's peer starts
+        server.stop();
+        server = null;
+        Thread.sleep(1000);
+    }
+
+    @Test
+    public void testMultipleStreams() throws Exception {
+        final ChaincodeBase cb = new ChaincodeBase() {
+            @Override
+            public Response init(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse();
+            }
+
+            @Override
+            public Response invoke(final ChaincodeStub stub) {
+                return ResponseUtils.newSuccessResponse(stub.getStringState("a"));
+            }
+
+            @Override
+            public Properties getChaincodeConfig() {
+                final Properties props = super.getChaincodeConfig();
+                props.setProperty("CHAINCODE_GRPC_STREAMS", "2");
+                props.setProperty("CHAINCODE_GRPC_STREAMS_EXPERIMENTAL", "true");
+                return props;
+            }
+        };
+
+        final List<ScenarioStep> scenario = new ArrayList<>();
+        scenario.add(new RegisterStep());
+        scenario.add(new RegisterStep());
+        scenario.add(new GetValueStep("100"));
+        scenario.add(new CompleteStep());
+
+        server = ChaincodeMockPeer.startServer(scenario);
+
+        cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 2, 5000, TimeUnit.MILLISECONDS);
+        assertThat(cb.getState(), is(ChaincodeBase.CCState.READY));
+
+        // sent on the stream that registered last, and answered on it
+        final ByteString invokePayload = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8("invoke"))
+                .build().toByteString();
+        server.send(MessageUtil.newEventMessage(TRANSACTION, "testChannel", "0", invokePayload, null));
+
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 4, 5000, TimeUnit.MILLISECONDS);
+        assertThat(server.getLastMessageRcvd().getType(), is(COMPLETED));
+        assertThat(ProposalResponsePackage.Response.parseFrom(server.getLastMessageRcvd().getPayload()).getMessage(), is("100"));
+    }
+
     @Test
     public void testChaincodeLogLevel() throws Exception {
         final ChaincodeBase cb = new EmptyChaincode();
@@ -611,6 +1278,7 @@ public final class ChaincodeFVTest {
         server = ChaincodeMockPeer.startServer(scenario);
 
         cb.start(new String[] {"-a", "127.0.0.1:7052", "-i", "testId"});
+        ChaincodeMockPeer.checkScenarioStepEnded(server, 1, 5000, TimeUnit.MILLISECONDS);
 
         assertEquals("Wrong debug level for " + cb.getClass().getPackage().getName(), Level.FINEST,
                 Logger.getLogger(cb.getClass().getPackage().getName()).getLevel());
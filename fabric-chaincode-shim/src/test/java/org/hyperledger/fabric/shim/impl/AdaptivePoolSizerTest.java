@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.metrics.MetricsProvider;
+import org.hyperledger.fabric.metrics.PoolSizeChange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public final class AdaptivePoolSizerTest {
+
+    private InvocationTaskExecutor executor;
+    private MetricsProvider metrics;
+    private CountDownLatch release;
+
+    @BeforeEach
+    public void setup() {
+        executor = new InvocationTaskExecutor(2, 2, 1000, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(10), Executors.defaultThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        metrics = Mockito.mock(MetricsProvider.class);
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    public void teardown() throws InterruptedException {
+        release.countDown();
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private void submit(final int tasks) throws InterruptedException {
+        for (int i = 0; i < tasks; i++) {
+            executor.execute(() -> {
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        // not getActiveCount(), which also counts threads yet to take a task
+        while (executor.getCurrentTaskCount() < Math.min(tasks, executor.getCorePoolSize())) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void growsWhenTasksQueueAndWait() throws InterruptedException {
+        final AdaptivePoolSizer sizer = new AdaptivePoolSizer(executor, executor, 2, 8, metrics, 1);
+        submit(5);
+        sizer.recordTask(1000, 900);
+
+        assertThat(sizer.adjust()).isEqualTo(5);
+        assertThat(executor.getCorePoolSize()).isEqualTo(5);
+        assertThat(executor.getMaximumPoolSize()).isEqualTo(5);
+
+        final ArgumentCaptor<PoolSizeChange> change = ArgumentCaptor.forClass(PoolSizeChange.class);
+        verify(metrics).poolSizeChanged(change.capture());
+        assertThat(change.getValue().getPreviousSize()).isEqualTo(2);
+        assertThat(change.getValue().getNewSize()).isEqualTo(5);
+        assertThat(change.getValue().getQueueDepth()).isEqualTo(3);
+        assertThat(change.getValue().getWaitFraction()).isEqualTo(0.9);
+    }
+
+    @Test
+    public void growsNoFurtherThanMax() throws InterruptedException {
+        final AdaptivePoolSizer sizer = new AdaptivePoolSizer(executor, executor, 2, 3, metrics, 1);
+        submit(5);
+        sizer.recordTask(1000, 900);
+
+        assertThat(sizer.adjust()).isEqualTo(3);
+        assertThat(executor.getCorePoolSize()).isEqualTo(3);
+    }
+
+    @Test
+    public void doesNotGrowWhenTasksDoNotWait() throws InterruptedException {
+        final AdaptivePoolSizer sizer = new AdaptivePoolSizer(executor, executor, 1, 8, metrics, 2);
+        submit(5);
+        sizer.recordTask(1000, 0);
+
+        assertThat(sizer.adjust()).isEqualTo(2);
+        verify(metrics, never()).poolSizeChanged(any());
+    }
+
+    @Test
+    public void shrinksWhenIdle() {
+        executor.setMaximumPoolSize(6);
+        executor.setCorePoolSize(6);
+        final AdaptivePoolSizer sizer = new AdaptivePoolSizer(executor, executor, 4, 8, metrics, 1);
+        sizer.recordTask(1000, 0);
+
+        assertThat(sizer.adjust()).isEqualTo(5);
+        assertThat(sizer.adjust()).isEqualTo(4);
+        assertThat(sizer.adjust()).isEqualTo(4);
+        assertThat(executor.getCorePoolSize()).isEqualTo(4);
+        assertThat(executor.getMaximumPoolSize()).isEqualTo(6);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.metrics.TaskMetricsCollector;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public final class ConnectionHealthMonitorTest {
+
+    private static final long LATER = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+    private ConnectionHealthMonitor monitor;
+    private final List<String> cancelled = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() {
+        monitor = new ConnectionHealthMonitor(1000);
+        monitor.setCanceller(cancelled::add);
+    }
+
+    private static ChaincodeMessage message(final ChaincodeMessage.Type type) {
+        return ChaincodeMessage.newBuilder().setType(type).setTxid("txid").build();
+    }
+
+    @Test
+    public void idleWithNothingOwed() {
+        assertThat(monitor.check(LATER)).isFalse();
+        assertThat(cancelled).isEmpty();
+    }
+
+    @Test
+    public void idleWithResponseOwed() {
+        monitor.messageSent(message(ChaincodeMessage.Type.GET_STATE));
+        assertThat(monitor.check(System.nanoTime())).isFalse();
+
+        assertThat(monitor.check(LATER)).isTrue();
+        assertThat(cancelled).hasSize(1);
+        assertThat(cancelled.get(0)).contains("1 responses owed");
+
+        // only cancels once
+        assertThat(monitor.check(LATER)).isFalse();
+        assertThat(cancelled).hasSize(1);
+    }
+
+    @Test
+    public void responseReceived() {
+        monitor.messageSent(message(ChaincodeMessage.Type.GET_STATE));
+        monitor.messageSent(message(ChaincodeMessage.Type.COMPLETED));
+        monitor.messageReceived(message(ChaincodeMessage.Type.RESPONSE));
+
+        assertThat(monitor.check(LATER)).isFalse();
+    }
+
+    @Test
+    public void idleAfterKeepAlive() {
+        monitor.messageReceived(message(ChaincodeMessage.Type.KEEPALIVE));
+        monitor.messageSent(message(ChaincodeMessage.Type.KEEPALIVE));
+        assertThat(monitor.check(System.nanoTime())).isFalse();
+
+        assertThat(monitor.check(LATER)).isTrue();
+        assertThat(cancelled.get(0)).contains("0 responses owed");
+    }
+
+    @Test
+    public void notIdleWhileHoldingBackThePeer() {
+        final TaskMetricsCollector tasks = Mockito.mock(TaskMetricsCollector.class);
+        final InboundFlowControl flowControl = new InboundFlowControl(tasks, 4, 2);
+        monitor.setReadsPaused(flowControl::isPaused);
+
+        // transactions queueing, so reads pause
+        monitor.messageReceived(message(ChaincodeMessage.Type.KEEPALIVE));
+        flowControl.messageReceived(message(ChaincodeMessage.Type.TRANSACTION));
+        when(tasks.getCurrentQueueCount()).thenReturn(4);
+        flowControl.readMore();
+        assertThat(flowControl.isPaused()).isTrue();
+
+        assertThat(monitor.check(LATER)).isFalse();
+        assertThat(cancelled).isEmpty();
+
+        // once reads resume, the peer has the idle timeout from then
+        when(tasks.getCurrentQueueCount()).thenReturn(2);
+        flowControl.readMore();
+        assertThat(flowControl.isPaused()).isFalse();
+        assertThat(monitor.check(LATER + TimeUnit.MILLISECONDS.toNanos(500))).isFalse();
+        assertThat(monitor.check(LATER + TimeUnit.SECONDS.toNanos(2))).isTrue();
+    }
+
+    @Test
+    public void startAndStop() {
+        monitor.start();
+        monitor.stop();
+    }
+}
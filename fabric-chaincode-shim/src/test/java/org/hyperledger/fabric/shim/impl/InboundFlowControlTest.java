@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hyperledger.fabric.metrics.TaskMetricsCollector;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage.Type;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public final class InboundFlowControlTest {
+
+    private TaskMetricsCollector tasks;
+    private InboundFlowControl flowControl;
+    private AtomicInteger requested;
+
+    @BeforeEach
+    public void setup() {
+        tasks = Mockito.mock(TaskMetricsCollector.class);
+        flowControl = new InboundFlowControl(tasks, 4, 2);
+        requested = new AtomicInteger();
+        flowControl.setRequester(requested::addAndGet);
+    }
+
+    private static ChaincodeMessage message(final Type type) {
+        return ChaincodeMessage.newBuilder().setType(type).setTxid("txid").build();
+    }
+
+    private void receive(final Type type, final int waiting) {
+        flowControl.messageReceived(message(type));
+        when(tasks.getCurrentQueueCount()).thenReturn(waiting);
+        flowControl.readMore();
+    }
+
+    @Test
+    public void readsWhileBelowHighWater() {
+        receive(Type.TRANSACTION, 3);
+        assertThat(requested.get()).isEqualTo(1);
+        assertThat(flowControl.isPaused()).isFalse();
+
+        // already asked for the next message
+        flowControl.readMore();
+        assertThat(requested.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void pausesAtHighWaterAndResumesAtLowWater() {
+        receive(Type.TRANSACTION, 4);
+        assertThat(requested.get()).isEqualTo(0);
+        assertThat(flowControl.isPaused()).isTrue();
+
+        when(tasks.getCurrentQueueCount()).thenReturn(3);
+        flowControl.readMore();
+        assertThat(requested.get()).isEqualTo(0);
+
+        when(tasks.getCurrentQueueCount()).thenReturn(2);
+        flowControl.readMore();
+        assertThat(requested.get()).isEqualTo(1);
+        assertThat(flowControl.isPaused()).isFalse();
+    }
+
+    @Test
+    public void readsResponsesWhilePaused() {
+        receive(Type.TRANSACTION, 4);
+        assertThat(requested.get()).isEqualTo(0);
+
+        final AtomicInteger sent = new AtomicInteger();
+        flowControl.sendMessage(message(Type.GET_STATE), sent::incrementAndGet);
+        assertThat(sent.get()).isEqualTo(1);
+        assertThat(requested.get()).isEqualTo(1);
+
+        // another transaction arrived ahead of the response, so keep reading
+        receive(Type.TRANSACTION, 5);
+        assertThat(requested.get()).isEqualTo(2);
+
+        receive(Type.RESPONSE, 5);
+        assertThat(requested.get()).isEqualTo(2);
+
+        // nothing is owed for the transaction's result
+        flowControl.sendMessage(message(Type.COMPLETED), sent::incrementAndGet);
+        assertThat(sent.get()).isEqualTo(2);
+        assertThat(requested.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void waterMarks() {
+        assertThrows(IllegalArgumentException.class, () -> new InboundFlowControl(tasks, 2, 2));
+        assertThrows(IllegalArgumentException.class, () -> new InboundFlowControl(tasks, 2, -1));
+    }
+}
@@ -5,9 +5,15 @@
  */
 package org.hyperledger.fabric.shim.impl;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
@@ -15,6 +21,7 @@ import java.util.logging.Logger;
 
 import org.hyperledger.fabric.metrics.Metrics;
 import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeID;
+import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeInput;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
 import org.hyperledger.fabric.shim.ChaincodeBase;
 import org.junit.jupiter.api.AfterEach;
@@ -111,4 +118,109 @@ public final class InvocationTaskManagerTest {
         itm.onChaincodeMessage(msg);
 
     }
+
+    @Test
+    public void onKeepAlive() {
+        final List<ChaincodeMessage> sent = new ArrayList<>();
+        itm.setResponseConsumer(sent::add);
+        final ChaincodeMessage msg = ChaincodeMessage.newBuilder().setType(ChaincodeMessage.Type.KEEPALIVE).build();
+
+        chaincode.setState(ChaincodeBase.CCState.CREATED);
+        itm.onChaincodeMessage(msg);
+        chaincode.setState(ChaincodeBase.CCState.READY);
+        itm.onChaincodeMessage(msg);
+
+        assertThat(sent).containsExactly(msg, msg);
+    }
+
+    @Test
+    public void streamStateWithMultipleStreams() {
+        final Properties props = new Properties();
+        props.setProperty("CHAINCODE_GRPC_STREAMS", "2");
+        props.setProperty("CHAINCODE_GRPC_STREAMS_EXPERIMENTAL", "true");
+        when(chaincode.getChaincodeConfig()).thenReturn(props);
+        itm.shutdown();
+        itm = InvocationTaskManager.getManager(chaincode, ChaincodeID.newBuilder().setName("randomname").build());
+        itm.setResponseConsumer((value) -> {
+        });
+        final InvocationTaskManager other = InvocationTaskManager.getManager(chaincode, ChaincodeID.newBuilder().setName("randomname").build());
+        other.setResponseConsumer((value) -> {
+        });
+
+        itm.register();
+        itm.onChaincodeMessage(ChaincodeMessage.newBuilder().setType(ChaincodeMessage.Type.REGISTERED).build());
+        itm.onChaincodeMessage(ChaincodeMessage.newBuilder().setType(ChaincodeMessage.Type.READY).build());
+        assertThat(itm.isReady()).isTrue();
+
+        // registering the second stream leaves the first, and the chaincode, ready
+        other.register();
+        assertThat(itm.isReady()).isTrue();
+        assertThat(other.isReady()).isFalse();
+        assertThat(chaincode.getState()).isEqualTo(ChaincodeBase.CCState.READY);
+
+        other.shutdown();
+    }
+
+    @Test
+    public void taskMetricsReportedFromRegisteringUntilShutdown() {
+        final StreamTaskMetrics metrics = StreamTaskMetrics.getInstance();
+        final int unregistered = metrics.getCorePoolSize();
+
+        itm.register();
+        itm.register();
+        assertThat(metrics.getCorePoolSize()).isEqualTo(unregistered + 5);
+
+        itm.shutdown();
+        assertThat(metrics.getCorePoolSize()).isEqualTo(unregistered);
+    }
+
+    @Test
+    public void onMessageTestTxVirtualThreads() throws UnsupportedEncodingException {
+        final Properties props = new Properties();
+        props.setProperty("TP_EXECUTOR", "virtual");
+        when(chaincode.getChaincodeConfig()).thenReturn(props);
+        itm.shutdown();
+        itm = InvocationTaskManager.getManager(chaincode, ChaincodeID.newBuilder().setName("randomname").build());
+        itm.setResponseConsumer((value) -> {
+        });
+
+        final ChaincodeMessage msg = ChaincodeMessageFactory.newEventMessage(ChaincodeMessage.Type.TRANSACTION,
+                "mychannel", "txid", ByteString.copyFrom("Hello", "UTF-8"));
+        chaincode.setState(ChaincodeBase.CCState.READY);
+
+        itm.onChaincodeMessage(msg);
+    }
+
+    @Test
+    public void onMessageTestTxPriorityScheduler() throws UnsupportedEncodingException {
+        final Properties props = new Properties();
+        props.setProperty("TP_SCHEDULER", "priority");
+        when(chaincode.getChaincodeConfig()).thenReturn(props);
+        when(chaincode.isQueryFunction("myquery")).thenReturn(true);
+        itm.shutdown();
+        itm = InvocationTaskManager.getManager(chaincode, ChaincodeID.newBuilder().setName("randomname").build());
+        itm.setResponseConsumer((value) -> {
+        });
+        chaincode.setState(ChaincodeBase.CCState.READY);
+
+        final ByteString input = ChaincodeInput.newBuilder().addArgs(ByteString.copyFromUtf8("myquery")).addArgs(ByteString.copyFromUtf8("arg"))
+                .build().toByteString();
+        itm.onChaincodeMessage(ChaincodeMessageFactory.newEventMessage(ChaincodeMessage.Type.TRANSACTION, "mychannel", "txid1", input));
+        itm.onChaincodeMessage(ChaincodeMessageFactory.newEventMessage(ChaincodeMessage.Type.TRANSACTION, "mychannel", "txid2", input));
+
+        // asked once, then remembered
+        verify(chaincode, times(1)).isQueryFunction("myquery");
+    }
+
+    @Test
+    public void invalidChannelSetting() {
+        final Properties props = new Properties();
+        props.setProperty("TP_SCHEDULER", "channel");
+        props.setProperty("TP_CHANNEL_WEIGHT.mychannel", "two");
+        when(chaincode.getChaincodeConfig()).thenReturn(props);
+
+        // found when starting, not when the channel's first transaction arrives
+        assertThatThrownBy(() -> InvocationTaskManager.getManager(chaincode, ChaincodeID.newBuilder().setName("randomname").build()))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("TP_CHANNEL_WEIGHT.mychannel");
+    }
 }
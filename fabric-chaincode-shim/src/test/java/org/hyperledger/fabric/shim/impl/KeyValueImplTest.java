@@ -14,6 +14,10 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
 import org.hyperledger.fabric.protos.ledger.queryresult.KvQueryResult.KV;
 import org.junit.Test;
 
@@ -96,4 +100,53 @@ public class KeyValueImplTest {
 
     }
 
+    @Test
+    public void testEncoded() {
+        final KV kv = KV.newBuilder()
+                .setNamespace("mycc")
+                .setKey("key")
+                .setValue(ByteString.copyFromUtf8("value"))
+                .build();
+        final KeyValueImpl encoded = new KeyValueImpl(kv.toByteString());
+
+        assertThat(encoded.getKey(), is(equalTo("key")));
+        assertThat(encoded.getValue(), is(equalTo("value".getBytes(UTF_8))));
+        assertThat(encoded.getStringValue(), is(equalTo("value")));
+        assertTrue(encoded.equals(new KeyValueImpl(kv)));
+        assertEquals(new KeyValueImpl(kv).hashCode(), encoded.hashCode());
+    }
+
+    @Test
+    public void testEncodedEmpty() {
+        final KeyValueImpl encoded = new KeyValueImpl(ByteString.EMPTY);
+
+        assertThat(encoded.getKey(), is(equalTo("")));
+        assertThat(encoded.getValue().length, is(0));
+    }
+
+    @Test
+    public void testGetValueBuffer() {
+        final KeyValueImpl kv = new KeyValueImpl(KV.newBuilder()
+                .setKey("key")
+                .setValue(ByteString.copyFromUtf8("value"))
+                .build().toByteString());
+
+        final ByteBuffer buffer = kv.getValueBuffer();
+        assertTrue(buffer.isReadOnly());
+        assertThat(UTF_8.decode(buffer).toString(), is(equalTo("value")));
+    }
+
+    @Test
+    public void testGetValueStream() throws IOException {
+        final KeyValueImpl kv = new KeyValueImpl(KV.newBuilder()
+                .setKey("key")
+                .setValue(ByteString.copyFromUtf8("value"))
+                .build().toByteString());
+
+        final InputStream stream = kv.getValueStream();
+        final byte[] read = new byte[10];
+        assertThat(stream.read(read), is(5));
+        assertThat(new String(read, 0, 5, UTF_8), is(equalTo("value")));
+    }
+
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import io.grpc.ManagedChannel;
+import io.grpc.netty.NettyChannelBuilder;
+import io.netty.channel.nio.NioEventLoopGroup;
+
+public final class NettyTransportTest {
+
+    private static ManagedChannel build(final NettyTransport transport) {
+        return transport.configure(NettyChannelBuilder.forAddress("localhost", 7052).usePlaintext()).build();
+    }
+
+    @Test
+    public void defaults() {
+        final NettyTransport transport = new NettyTransport(new Properties());
+        build(transport).shutdownNow();
+        assertThat(transport.getEventLoopGroup()).isNull();
+    }
+
+    @Test
+    public void eventLoopSharedBetweenChannels() {
+        final Properties props = new Properties();
+        props.setProperty("CHAINCODE_GRPC_EVENT_LOOP_THREADS", "1");
+        props.setProperty("CHAINCODE_GRPC_DIRECT_EXECUTOR", "true");
+        props.setProperty("CHAINCODE_GRPC_MAX_INBOUND_MESSAGE_SIZE", "104857600");
+        props.setProperty("CHAINCODE_GRPC_FLOW_CONTROL_WINDOW", "4194304");
+        props.setProperty("CHAINCODE_GRPC_ALLOCATOR", "unpooled");
+        final NettyTransport transport = new NettyTransport(props);
+
+        build(transport).shutdownNow();
+        final Object group = transport.getEventLoopGroup();
+        assertThat(group).isInstanceOf(NioEventLoopGroup.class);
+
+        build(transport).shutdownNow();
+        assertThat(transport.getEventLoopGroup()).isSameAs(group);
+        transport.getEventLoopGroup().shutdownGracefully();
+    }
+
+    @Test
+    public void epollFallsBackToNio() {
+        final Properties props = new Properties();
+        props.setProperty("CHAINCODE_GRPC_TRANSPORT", "epoll");
+        final NettyTransport transport = new NettyTransport(props);
+
+        build(transport).shutdownNow();
+        assertThat(transport.getEventLoopGroup()).isInstanceOf(NioEventLoopGroup.class);
+        transport.getEventLoopGroup().shutdownGracefully();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.grpc.stub.CallStreamObserver;
+
+public final class OutboundMessageWriterTest {
+
+    private static final class FakeStream extends CallStreamObserver<ChaincodeMessage> {
+        private final List<ChaincodeMessage> sent = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicBoolean ready = new AtomicBoolean(true);
+        private final AtomicInteger writing = new AtomicInteger();
+        private volatile boolean overlapped;
+        private volatile boolean failing;
+        private volatile Throwable error;
+        private Runnable onReady;
+
+        @Override
+        public boolean isReady() {
+            return ready.get();
+        }
+
+        @Override
+        public void setOnReadyHandler(final Runnable onReadyHandler) {
+            this.onReady = onReadyHandler;
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+        }
+
+        @Override
+        public void request(final int count) {
+        }
+
+        @Override
+        public void setMessageCompression(final boolean enable) {
+        }
+
+        @Override
+        public void onNext(final ChaincodeMessage value) {
+            if (failing) {
+                throw new IllegalStateException("stream broken");
+            }
+            if (writing.incrementAndGet() != 1) {
+                overlapped = true;
+            }
+            sent.add(value);
+            writing.decrementAndGet();
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+
+        void becomeReady() {
+            ready.set(true);
+            onReady.run();
+        }
+    }
+
+    private FakeStream stream;
+    private OutboundMessageWriter writer;
+
+    @BeforeEach
+    public void setup() {
+        stream = new FakeStream();
+        writer = new OutboundMessageWriter();
+        writer.setStream(stream);
+    }
+
+    private static ChaincodeMessage message(final String txid) {
+        return ChaincodeMessage.newBuilder().setType(ChaincodeMessage.Type.GET_STATE).setTxid(txid).build();
+    }
+
+    @Test
+    public void writesInOrder() {
+        writer.accept(message("1"));
+        writer.accept(message("2"));
+
+        assertThat(stream.sent).containsExactly(message("1"), message("2"));
+        assertThat(writer.getQueuedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void holdsMessagesUntilReady() {
+        stream.ready.set(false);
+        writer.accept(message("1"));
+        writer.accept(message("2"));
+
+        assertThat(stream.sent).isEmpty();
+        assertThat(writer.getQueuedCount()).isEqualTo(2);
+
+        stream.becomeReady();
+        assertThat(stream.sent).containsExactly(message("1"), message("2"));
+        assertThat(writer.getQueuedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void writesFromManyThreadsOneAtATime() throws InterruptedException {
+        final int threads = 8;
+        final int messages = 1000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            final String prefix = Integer.toString(t);
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < messages; i++) {
+                    writer.accept(message(prefix + ":" + i));
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(stream.sent).hasSize(threads * messages);
+        assertThat(stream.overlapped).isFalse();
+    }
+
+    @Test
+    public void failsMessagesOnceSendingFails() {
+        final List<String> failed = new ArrayList<>();
+        writer.setFailureHandler((message, cause) -> failed.add(message.getTxid() + ":" + cause.getMessage()));
+
+        writer.accept(message("1"));
+        stream.failing = true;
+        writer.accept(message("2"));
+        stream.failing = false;
+        writer.accept(message("3"));
+
+        // the stream is given up on, and nothing more is written to it
+        assertThat(stream.sent).containsExactly(message("1"));
+        assertThat(stream.error).hasMessage("stream broken");
+        assertThat(failed).containsExactly("2:stream broken", "3:stream broken");
+    }
+
+    @Test
+    public void failsQueuedMessagesWhenSendingFails() {
+        final List<String> failed = new ArrayList<>();
+        writer.setFailureHandler((message, cause) -> failed.add(message.getTxid()));
+
+        stream.ready.set(false);
+        writer.accept(message("1"));
+        writer.accept(message("2"));
+        writer.accept(message("3"));
+        stream.failing = true;
+        stream.becomeReady();
+
+        // the first fails to send, and the rest are not left waiting
+        assertThat(failed).containsExactly("1", "2", "3");
+        assertThat(writer.getQueuedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void failsQueuedMessagesWhenClosed() {
+        final List<String> failed = new ArrayList<>();
+        writer.setFailureHandler((message, cause) -> failed.add(message.getTxid() + ":" + cause.getMessage()));
+
+        stream.ready.set(false);
+        writer.accept(message("1"));
+        writer.accept(message("2"));
+        writer.close(new IllegalStateException("stream closed"));
+        writer.accept(message("3"));
+
+        assertThat(stream.sent).isEmpty();
+        assertThat(failed).containsExactly("1:stream closed", "2:stream closed", "3:stream closed");
+        assertThat(writer.getQueuedCount()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponse;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResultBytes;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.google.protobuf.ByteString;
+
+public final class QueryResultsIteratorImplTest {
+
+    private static ByteString page(final boolean hasMore, final String... results) {
+        final QueryResponse.Builder builder = QueryResponse.newBuilder().setHasMore(hasMore).setId("query");
+        for (final String result : results) {
+            builder.addResults(QueryResultBytes.newBuilder().setResultBytes(ByteString.copyFromUtf8(result)));
+        }
+        return builder.build().toByteString();
+    }
+
+    private static QueryResultsIteratorImpl<String> iterator(final ChaincodeInvocationTask handler, final int prefetch) {
+        return new QueryResultsIteratorImpl<>(handler, "mychannel", "txid", page(true, "a", "b", "c"), r -> r.getResultBytes().toStringUtf8(),
+                prefetch);
+    }
+
+    @Test
+    public void nextPageWhenUsedUp() {
+        final ChaincodeInvocationTask handler = mock(ChaincodeInvocationTask.class);
+        when(handler.invoke(any(ChaincodeMessage.class))).thenReturn(page(false, "d"));
+
+        final StringBuilder results = new StringBuilder();
+        iterator(handler, 0).forEach(results::append);
+
+        assertThat(results.toString()).isEqualTo("abcd");
+        verify(handler, times(1)).invoke(any(ChaincodeMessage.class));
+        verify(handler, never()).invokeAsync(any(ChaincodeMessage.class));
+    }
+
+    @Test
+    public void nextPageAskedForAhead() {
+        final ChaincodeInvocationTask handler = mock(ChaincodeInvocationTask.class);
+        final CompletableFuture<ByteString> nextPage = new CompletableFuture<>();
+        when(handler.invokeAsync(any(ChaincodeMessage.class))).thenReturn(nextPage);
+        when(handler.join(nextPage)).thenReturn(page(false, "d"));
+
+        final Iterator<String> iterator = iterator(handler, 1).iterator();
+        assertThat(iterator.next()).isEqualTo("a");
+        verify(handler, never()).invokeAsync(any(ChaincodeMessage.class));
+
+        // one left in the page
+        assertThat(iterator.next()).isEqualTo("b");
+        verify(handler, times(1)).invokeAsync(any(ChaincodeMessage.class));
+
+        assertThat(iterator.next()).isEqualTo("c");
+        assertThat(iterator.next()).isEqualTo("d");
+        assertThat(iterator.hasNext()).isFalse();
+
+        // asked for once, and the last page doesn't ask for more
+        verify(handler, times(1)).invokeAsync(any(ChaincodeMessage.class));
+        verify(handler, never()).invoke(any(ChaincodeMessage.class));
+    }
+
+    @Test
+    public void prefetchLargerThanPage() {
+        final ChaincodeInvocationTask handler = mock(ChaincodeInvocationTask.class);
+        when(handler.invokeAsync(any(ChaincodeMessage.class))).thenReturn(new CompletableFuture<>());
+
+        final Iterator<String> iterator = iterator(handler, 100).iterator();
+        iterator.next();
+
+        verify(handler, times(1)).invokeAsync(any(ChaincodeMessage.class));
+    }
+
+    @Test
+    public void streamFetchesPagesAsNeeded() {
+        final ChaincodeInvocationTask handler = mock(ChaincodeInvocationTask.class);
+        when(handler.invoke(any(ChaincodeMessage.class))).thenReturn(page(false, "d"));
+
+        try (Stream<String> stream = iterator(handler, 0).stream()) {
+            assertThat(stream.filter(r -> r.compareTo("a") > 0).findFirst()).contains("b");
+        }
+
+        // the next page wasn't needed, and the query was closed
+        final ArgumentCaptor<ChaincodeMessage> sent = ArgumentCaptor.forClass(ChaincodeMessage.class);
+        verify(handler, times(1)).invoke(sent.capture());
+        assertThat(sent.getValue().getType()).isEqualTo(ChaincodeMessage.Type.QUERY_STATE_CLOSE);
+    }
+
+    @Test
+    public void streamAcrossPages() throws Exception {
+        final ChaincodeInvocationTask handler = mock(ChaincodeInvocationTask.class);
+        when(handler.invoke(any(ChaincodeMessage.class))).thenReturn(page(false, "d"));
+
+        final QueryResultsIteratorImpl<String> iterator = iterator(handler, 0);
+        try (Stream<String> stream = iterator.stream()) {
+            assertThat(stream.collect(Collectors.joining())).isEqualTo("abcd");
+        }
+        iterator.close();
+
+        // one QUERY_STATE_NEXT, and one QUERY_STATE_CLOSE however many times closed
+        verify(handler, times(2)).invoke(any(ChaincodeMessage.class));
+    }
+
+    @Test
+    public void sizeEstimate() {
+        final ChaincodeInvocationTask handler = mock(ChaincodeInvocationTask.class);
+        final QueryResultsIteratorImpl<String> more = iterator(handler, 0);
+        assertThat(more.spliterator().estimateSize()).isEqualTo(Long.MAX_VALUE);
+
+        final QueryResultsIteratorImpl<String> last = new QueryResultsIteratorImpl<>(handler, "mychannel", "txid", page(false, "a", "b"),
+                r -> r.getResultBytes().toStringUtf8());
+        final Spliterator<String> spliterator = last.spliterator();
+        assertThat(spliterator.estimateSize()).isEqualTo(2);
+        spliterator.tryAdvance(r -> {
+        });
+        assertThat(spliterator.estimateSize()).isEqualTo(1);
+    }
+}
@@ -27,10 +27,20 @@ public class QueryResultsIteratorWithMetadataImplTest {
         assertThat(testIter.getMetadata().getFetchedRecordsCount(), is(2));
     }
 
+    @Test
+    public void sizeEstimateFromMetadata() {
+        final QueryResultsIteratorWithMetadataImpl<Integer> testIter = new QueryResultsIteratorWithMetadataImpl<>(null, "", "",
+                prepareQueryResponse().toByteString(), queryResultBytesToKv);
+        assertThat(testIter.spliterator().estimateSize(), is(2L));
+    }
+
     @Test
     public void getInvalidMetadata() {
+        // the metadata is only decoded when asked for
+        final QueryResultsIteratorWithMetadataImpl<Integer> testIter = new QueryResultsIteratorWithMetadataImpl<>(null, "", "",
+                prepareQueryResponseWrongMeta().toByteString(), queryResultBytesToKv);
         try {
-            new QueryResultsIteratorWithMetadataImpl<>(null, "", "", prepareQueryResponseWrongMeta().toByteString(), queryResultBytesToKv);
+            testIter.getMetadata();
             fail();
         } catch (final RuntimeException e) {
         }
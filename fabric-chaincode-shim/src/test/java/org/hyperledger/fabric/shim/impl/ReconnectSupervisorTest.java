@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public final class ReconnectSupervisorTest {
+
+    private static ReconnectSupervisor supervisor(final long initialBackoff, final long maxBackoff) {
+        return new ReconnectSupervisor(() -> null, () -> null, initialBackoff, maxBackoff, 0);
+    }
+
+    @Test
+    public void backoffDoubles() {
+        final ReconnectSupervisor supervisor = supervisor(100, 1000);
+        assertThat(supervisor.getBackoff(1)).isEqualTo(100L);
+        assertThat(supervisor.getBackoff(2)).isEqualTo(200L);
+        assertThat(supervisor.getBackoff(4)).isEqualTo(800L);
+        assertThat(supervisor.getBackoff(5)).isEqualTo(1000L);
+        assertThat(supervisor.getBackoff(Integer.MAX_VALUE)).isEqualTo(1000L);
+    }
+
+    @Test
+    public void attemptsCountedUntilReady() {
+        final ReconnectSupervisor supervisor = supervisor(60_000, 60_000);
+        try {
+            supervisor.disconnected();
+            supervisor.disconnected();
+            assertThat(supervisor.getFailures()).isEqualTo(2);
+
+            // the next failure counts from one, however long the connection
+            // stayed up
+            supervisor.reachedReady();
+            supervisor.disconnected();
+            assertThat(supervisor.getFailures()).isEqualTo(1);
+        } finally {
+            supervisor.stop();
+        }
+    }
+
+    @Test
+    public void invalidBackoff() {
+        assertThrows(IllegalArgumentException.class, () -> supervisor(0, 1000));
+        assertThrows(IllegalArgumentException.class, () -> supervisor(1000, 100));
+    }
+}
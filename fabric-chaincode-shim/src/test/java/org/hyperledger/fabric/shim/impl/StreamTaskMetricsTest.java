@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.hyperledger.fabric.metrics.TaskMetricsCollector;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public final class StreamTaskMetricsTest {
+
+    private static TaskMetricsCollector stream(final int tasks, final String channel, final int queued) {
+        final TaskMetricsCollector metrics = Mockito.mock(TaskMetricsCollector.class);
+        when(metrics.getCurrentTaskCount()).thenReturn(tasks);
+        when(metrics.getCurrentQueueCount()).thenReturn(queued);
+        when(metrics.getChannelQueueCounts()).thenReturn(Collections.singletonMap(channel, queued));
+        return metrics;
+    }
+
+    @Test
+    public void addsUpStreams() {
+        final StreamTaskMetrics metrics = new StreamTaskMetrics();
+        final TaskMetricsCollector first = stream(3, "ch1", 2);
+        final TaskMetricsCollector second = stream(4, "ch1", 5);
+        final TaskMetricsCollector third = stream(1, "ch2", 1);
+        metrics.add(first);
+        metrics.add(second);
+        metrics.add(third);
+
+        assertThat(metrics.getCurrentTaskCount()).isEqualTo(8);
+        assertThat(metrics.getCurrentQueueCount()).isEqualTo(8);
+        assertThat(metrics.getChannelQueueCounts()).containsEntry("ch1", 7).containsEntry("ch2", 1).hasSize(2);
+
+        // a stream that has shut down no longer counts
+        metrics.remove(second);
+        assertThat(metrics.getCurrentTaskCount()).isEqualTo(4);
+        assertThat(metrics.getChannelQueueCounts()).containsEntry("ch1", 2);
+    }
+
+    @Test
+    public void noStreams() {
+        final StreamTaskMetrics metrics = new StreamTaskMetrics();
+        assertThat(metrics.getPoolSize()).isEqualTo(0);
+        assertThat(metrics.getChannelQueueCounts()).isEmpty();
+    }
+}
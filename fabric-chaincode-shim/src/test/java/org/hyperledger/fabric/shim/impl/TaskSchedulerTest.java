@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.hyperledger.fabric.metrics.TaskMetricsCollector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public final class TaskSchedulerTest {
+
+    // tasks handed to the executor, run when the test says
+    private final Queue<Runnable> executor = new ArrayDeque<>();
+    private final List<String> ran = new ArrayList<>();
+    private TaskScheduler scheduler;
+
+    @BeforeEach
+    public void setup() {
+        scheduler = new TaskScheduler(executor::add, Mockito.mock(TaskMetricsCollector.class), () -> 1, 3, 2);
+    }
+
+    private void submit(final String name, final boolean query) {
+        scheduler.execute(() -> ran.add(name), "channel", query);
+    }
+
+    private void runAll() {
+        Runnable task;
+        while ((task = executor.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    public void runsQueriesFirst() {
+        submit("s1", false);
+        submit("s2", false);
+        submit("q1", true);
+        submit("q2", true);
+
+        assertThat(executor).hasSize(1);
+        assertThat(scheduler.getCurrentTaskCount()).isEqualTo(1);
+        assertThat(scheduler.getCurrentQueueCount()).isEqualTo(3);
+        assertThat(scheduler.getQueryQueueCount()).isEqualTo(2);
+        assertThat(scheduler.getSubmitQueueCount()).isEqualTo(1);
+
+        runAll();
+        assertThat(ran).containsExactly("s1", "q1", "q2", "s2");
+        assertThat(scheduler.getCurrentTaskCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void doesNotStarveSubmits() {
+        submit("s1", false);
+        submit("s2", false);
+        submit("q1", true);
+        submit("q2", true);
+        executor.poll().run();
+        submit("q3", true);
+
+        runAll();
+        assertThat(ran).containsExactly("s1", "q1", "q2", "s2", "q3");
+    }
+
+    @Test
+    public void rejectsWhenFull() {
+        submit("s1", false);
+        submit("s2", false);
+        submit("s3", false);
+        submit("q1", true);
+
+        assertThrows(RejectedExecutionException.class, () -> submit("q2", true));
+    }
+
+    @Test
+    public void executorRejects() {
+        final boolean[] rejecting = {false};
+        scheduler = new TaskScheduler(task -> {
+            if (rejecting[0]) {
+                throw new RejectedExecutionException("shutting down");
+            }
+            executor.add(task);
+        }, Mockito.mock(TaskMetricsCollector.class), () -> 1, 3, 2);
+
+        submit("s1", false);
+        submit("s2", false);
+
+        // s2 is handed to the executor as s1 completes, and put back when
+        // turned down
+        rejecting[0] = true;
+        executor.poll().run();
+        assertThat(scheduler.getCurrentTaskCount()).isEqualTo(0);
+        assertThat(scheduler.getSubmitQueueCount()).isEqualTo(1);
+
+        // s2 is turned down again, but only s3 is rejected
+        assertThrows(RejectedExecutionException.class, () -> submit("s3", false));
+        assertThat(scheduler.getCurrentQueueCount()).isEqualTo(1);
+
+        rejecting[0] = false;
+        submit("s4", false);
+        runAll();
+        assertThat(ran).containsExactly("s1", "s2", "s4");
+        assertThat(scheduler.getCurrentQueueCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void queryWeight() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new TaskScheduler(executor::add, Mockito.mock(TaskMetricsCollector.class), () -> 1, 3, 0));
+    }
+
+    private void submit(final String name, final String channel) {
+        scheduler.execute(() -> ran.add(name), channel, false);
+    }
+
+    private TaskScheduler channelScheduler(final int concurrency) {
+        return new TaskScheduler(executor::add, Mockito.mock(TaskMetricsCollector.class), () -> concurrency, 10, 2,
+            channel -> "limited".equals(channel) ? 1 : 10,
+            channel -> "heavy".equals(channel) ? 2 : 1);
+    }
+
+    @Test
+    public void channelsTakeTurns() {
+        scheduler = channelScheduler(1);
+        submit("busy", "x");
+        submit("a1", "a");
+        submit("a2", "a");
+        submit("a3", "a");
+        submit("b1", "b");
+        submit("b2", "b");
+        submit("c1", "c");
+
+        assertThat(scheduler.getChannelQueueCounts()).containsOnlyKeys("a", "b", "c");
+        assertThat(scheduler.getChannelQueueCounts().get("a")).isEqualTo(3);
+
+        runAll();
+        assertThat(ran).containsExactly("busy", "a1", "b1", "c1", "a2", "b2", "a3");
+        assertThat(scheduler.getChannelQueueCounts()).isEmpty();
+    }
+
+    @Test
+    public void channelWeight() {
+        scheduler = channelScheduler(1);
+        submit("busy", "x");
+        submit("h1", "heavy");
+        submit("h2", "heavy");
+        submit("h3", "heavy");
+        submit("h4", "heavy");
+        submit("b1", "b");
+        submit("b2", "b");
+
+        runAll();
+        assertThat(ran).containsExactly("busy", "h1", "h2", "b1", "h3", "h4", "b2");
+    }
+
+    @Test
+    public void channelLimit() {
+        scheduler = channelScheduler(3);
+        submit("l1", "limited");
+        submit("l2", "limited");
+        submit("b1", "b");
+        submit("b2", "b");
+
+        // only one of the limited channel's transactions may run at once
+        assertThat(executor).hasSize(3);
+        assertThat(scheduler.getChannelQueueCounts()).containsEntry("limited", 1);
+
+        executor.poll().run();
+        assertThat(ran).containsExactly("l1");
+        assertThat(executor).hasSize(3);
+        assertThat(scheduler.getChannelQueueCounts()).isEmpty();
+
+        runAll();
+        assertThat(ran).containsExactlyInAnyOrder("l1", "l2", "b1", "b2");
+    }
+
+    @Test
+    public void notByChannel() {
+        submit("a1", "a");
+        submit("b1", "b");
+        assertThat(scheduler.getChannelQueueCounts()).isEmpty();
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+import org.junit.jupiter.api.Test;
+
+public final class TxKeyTest {
+
+    private static ChaincodeMessage message(final String channel, final String txid) throws Exception {
+        final ChaincodeMessage message = ChaincodeMessage.newBuilder().setType(ChaincodeMessage.Type.RESPONSE).setChannelId(channel).setTxid(txid).build();
+        // as it arrives from the peer
+        return ChaincodeMessage.parseFrom(message.toByteArray());
+    }
+
+    @Test
+    public void equalForSameTransaction() throws Exception {
+        final TxKey key = TxKey.of(message("mychannel", "txid"));
+        final TxKey other = TxKey.of(message("mychannel", "txid"));
+
+        assertThat(key).isEqualTo(other);
+        assertThat(key.hashCode()).isEqualTo(other.hashCode());
+        assertThat(key.toString()).isEqualTo("mychanneltxid");
+    }
+
+    @Test
+    public void differentChannelOrTransaction() throws Exception {
+        final TxKey key = TxKey.of(message("mychannel", "txid"));
+
+        assertThat(key).isNotEqualTo(TxKey.of(message("otherchannel", "txid")));
+        assertThat(key).isNotEqualTo(TxKey.of(message("mychannel", "othertxid")));
+        // the same when joined together, but not the same transaction
+        assertThat(key).isNotEqualTo(TxKey.of(message("mychan", "neltxid")));
+        assertThat(key).isNotEqualTo("mychanneltxid");
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public final class VirtualThreadTaskExecutorTest {
+
+    private VirtualThreadTaskExecutor executor;
+    private CountDownLatch release;
+
+    @BeforeEach
+    public void setup() {
+        executor = new VirtualThreadTaskExecutor(2, 1, Executors.defaultThreadFactory());
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    public void teardown() throws InterruptedException {
+        release.countDown();
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private void block(final CountDownLatch started) {
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    @Test
+    public void capsConcurrency() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(2);
+        block(started);
+        block(started);
+        assertThat(started.await(10, TimeUnit.SECONDS)).isEqualTo(true);
+
+        final CountDownLatch third = new CountDownLatch(1);
+        block(third);
+        assertThat(third.await(100, TimeUnit.MILLISECONDS)).isEqualTo(false);
+
+        assertThat(executor.getCurrentTaskCount()).isEqualTo(2);
+        assertThat(executor.getActiveCount()).isEqualTo(2);
+        assertThat(executor.getCurrentQueueCount()).isEqualTo(1);
+        assertThat(executor.getPoolSize()).isEqualTo(3);
+        assertThat(executor.getMaximumPoolSize()).isEqualTo(2);
+        assertThat(executor.getCorePoolSize()).isEqualTo(0);
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+        }));
+
+        release.countDown();
+        assertThat(third.await(10, TimeUnit.SECONDS)).isEqualTo(true);
+    }
+
+    @Test
+    public void shutdown() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        block(started);
+        assertThat(started.await(10, TimeUnit.SECONDS)).isEqualTo(true);
+
+        executor.shutdown();
+        assertThat(executor.isShutdown()).isEqualTo(true);
+        assertThat(executor.isTerminated()).isEqualTo(false);
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+        }));
+        assertThat(executor.awaitTermination(100, TimeUnit.MILLISECONDS)).isEqualTo(false);
+
+        release.countDown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isEqualTo(true);
+        assertThat(executor.isTerminated()).isEqualTo(true);
+        assertThat(executor.getLargestPoolSize()).isEqualTo(1);
+        assertThat(executor.getCurrentTaskCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shutdownNow() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(2);
+        block(started);
+        block(started);
+        assertThat(started.await(10, TimeUnit.SECONDS)).isEqualTo(true);
+
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final Future<?> future = executor.submit(waiting::countDown);
+
+        // the task waiting to run is handed back, not dropped
+        final List<Runnable> notRun = executor.shutdownNow();
+        assertThat(notRun).containsExactly((Runnable) future);
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isEqualTo(true);
+        assertThat(waiting.getCount()).isEqualTo(1L);
+        assertThat(future.isDone()).isEqualTo(false);
+
+        notRun.get(0).run();
+        assertThat(future.isDone()).isEqualTo(true);
+    }
+
+    @Test
+    public void virtualThreadsOnly() throws InterruptedException {
+        if (!VirtualThreadTaskExecutor.isAvailable()) {
+            assertThrows(UnsupportedOperationException.class, () -> new VirtualThreadTaskExecutor(1, 0));
+            return;
+        }
+        final CountDownLatch ran = new CountDownLatch(1);
+        final VirtualThreadTaskExecutor defaultExecutor = new VirtualThreadTaskExecutor(1, 0);
+        defaultExecutor.execute(ran::countDown);
+        assertThat(ran.await(10, TimeUnit.SECONDS)).isEqualTo(true);
+        defaultExecutor.shutdown();
+        assertThat(defaultExecutor.awaitTermination(10, TimeUnit.SECONDS)).isEqualTo(true);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.shim.ledger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.junit.jupiter.api.Test;
+
+public final class PagedQueryResultsTest {
+
+    private static final int KEYS = 10;
+    private static final int VALUE_SIZE = 4;
+
+    // Pages asked for, as bookmark:size, and pages waited for and closed
+    private final List<String> requests = new ArrayList<>();
+    private int fetched;
+    private int closed;
+
+    private static KeyValue keyValue(final String key) {
+        return new KeyValue() {
+            @Override
+            public String getKey() {
+                return key;
+            }
+
+            @Override
+            public byte[] getValue() {
+                return new byte[VALUE_SIZE];
+            }
+
+            @Override
+            public String getStringValue() {
+                return new String(getValue(), UTF_8);
+            }
+        };
+    }
+
+    private static String key(final int i) {
+        return String.format("k%02d", i);
+    }
+
+    // Keys k00 to k09, the bookmark of each page being the key after it as the
+    // peer does
+    private final BiFunction<String, Integer, Supplier<QueryResultsIteratorWithMetadata<KeyValue>>> pages = (bookmark, size) -> {
+        requests.add(bookmark + ":" + size);
+        return () -> {
+            fetched++;
+            final int start = bookmark.isEmpty() ? 0 : Integer.parseInt(bookmark.substring(1));
+            final int end = Math.min(start + size, KEYS);
+            final List<KeyValue> page = new ArrayList<>();
+            for (int i = start; i < end; i++) {
+                page.add(keyValue(key(i)));
+            }
+            final QueryResponseMetadata metadata = QueryResponseMetadata.newBuilder().setFetchedRecordsCount(page.size())
+                    .setBookmark(end < KEYS ? key(end) : "").build();
+            return new QueryResultsIteratorWithMetadata<KeyValue>() {
+                @Override
+                public QueryResponseMetadata getMetadata() {
+                    return metadata;
+                }
+
+                @Override
+                public Iterator<KeyValue> iterator() {
+                    return page.iterator();
+                }
+
+                @Override
+                public void close() {
+                    closed++;
+                }
+            };
+        };
+    };
+
+    private static String keys(final PagedQueryResults results) {
+        return results.stream().map(KeyValue::getKey).collect(Collectors.joining(","));
+    }
+
+    @Test
+    public void allPages() throws Exception {
+        try (PagedQueryResults results = new PagedQueryResults(pages, 4, "", 0, 0)) {
+            assertThat(keys(results)).isEqualTo("k00,k01,k02,k03,k04,k05,k06,k07,k08,k09");
+            assertThat(results.isTruncated()).isFalse();
+            assertThat(results.getRecordCount()).isEqualTo(KEYS);
+        }
+        assertThat(requests).containsExactly(":4", "k04:4", "k08:4");
+        // pages read to the end are let go of by the peer without closing
+        assertThat(closed).isEqualTo(0);
+    }
+
+    @Test
+    public void nextPageAskedForAhead() throws Exception {
+        try (PagedQueryResults results = new PagedQueryResults(pages, 4, "", 0, 0)) {
+            // the first page is asked for straight away, but not waited for
+            assertThat(requests).containsExactly(":4");
+            assertThat(fetched).isEqualTo(0);
+
+            final Iterator<KeyValue> iterator = results.iterator();
+            assertThat(iterator.next().getKey()).isEqualTo("k00");
+            assertThat(requests).containsExactly(":4", "k04:4");
+            assertThat(fetched).isEqualTo(1);
+        }
+        // the page part read, and the page asked for ahead
+        assertThat(fetched).isEqualTo(2);
+        assertThat(closed).isEqualTo(2);
+    }
+
+    @Test
+    public void fullLastPage() throws Exception {
+        try (PagedQueryResults results = new PagedQueryResults(pages, 5, "", 0, 0)) {
+            assertThat(keys(results)).isEqualTo("k00,k01,k02,k03,k04,k05,k06,k07,k08,k09");
+        }
+        // no bookmark after the last page, so nothing more asked for
+        assertThat(requests).containsExactly(":5", "k05:5");
+    }
+
+    @Test
+    public void recordBudget() throws Exception {
+        try (PagedQueryResults results = new PagedQueryResults(pages, 4, "", 6, 0)) {
+            assertThat(keys(results)).isEqualTo("k00,k01,k02,k03,k04,k05");
+            assertThat(results.isTruncated()).isTrue();
+            assertThat(results.getBookmark()).isEqualTo("k06");
+        }
+        assertThat(requests).containsExactly(":4", "k04:2");
+    }
+
+    @Test
+    public void byteBudget() throws Exception {
+        try (PagedQueryResults results = new PagedQueryResults(pages, 4, "", 0, 5 * VALUE_SIZE)) {
+            // the page that goes over is returned whole, and the next isn't
+            assertThat(keys(results)).isEqualTo("k00,k01,k02,k03,k04,k05,k06,k07");
+            assertThat(results.isTruncated()).isTrue();
+            assertThat(results.getBookmark()).isEqualTo("k08");
+        }
+        // the next was asked for ahead, so it is closed unread
+        assertThat(requests).containsExactly(":4", "k04:4", "k08:4");
+        assertThat(fetched).isEqualTo(3);
+        assertThat(closed).isEqualTo(1);
+    }
+
+    @Test
+    public void byteBudgetUsedBeforeLastPage() throws Exception {
+        try (PagedQueryResults results = new PagedQueryResults(pages, 4, "", 0, 4 * VALUE_SIZE)) {
+            final Iterator<KeyValue> iterator = results.iterator();
+            for (int i = 0; i < 4; i++) {
+                iterator.next();
+            }
+            assertThat(iterator.hasNext()).isFalse();
+            assertThat(results.isTruncated()).isTrue();
+        }
+        // nothing asked for after the page that used the budget
+        assertThat(requests).containsExactly(":4", "k04:4");
+        assertThat(closed).isEqualTo(1);
+    }
+
+    @Test
+    public void carryOnFromBookmark() throws Exception {
+        final String bookmark;
+        try (PagedQueryResults results = new PagedQueryResults(pages, 3, "", 3, 0)) {
+            assertThat(keys(results)).isEqualTo("k00,k01,k02");
+            bookmark = results.getBookmark();
+        }
+        try (PagedQueryResults results = new PagedQueryResults(pages, 3, bookmark, 0, 0)) {
+            assertThat(keys(results)).isEqualTo("k03,k04,k05,k06,k07,k08,k09");
+            assertThat(results.getBookmark()).isEmpty();
+        }
+    }
+
+    @Test
+    public void closedPartWay() throws Exception {
+        final PagedQueryResults results = new PagedQueryResults(pages, 4, "", 0, 0);
+        final Iterator<KeyValue> iterator = results.iterator();
+        iterator.next();
+        results.close();
+        results.close();
+
+        assertThat(iterator.hasNext()).isFalse();
+        // the page being returned and the one asked for ahead
+        assertThat(closed).isEqualTo(2);
+        assertThat(results.getBookmark()).isEmpty();
+    }
+
+    @Test
+    public void closedUnread() throws Exception {
+        final PagedQueryResults results = new PagedQueryResults(pages, 4, "", 0, 0);
+        results.close();
+
+        assertThat(fetched).isEqualTo(1);
+        assertThat(closed).isEqualTo(1);
+    }
+
+    @Test
+    public void invalidPageSize() {
+        assertThatThrownBy(() -> new PagedQueryResults(pages, 0, "", 0, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
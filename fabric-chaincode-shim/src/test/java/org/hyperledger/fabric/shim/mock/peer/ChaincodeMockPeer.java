@@ -153,22 +153,25 @@ public class ChaincodeMockPeer {
                  */
                 @Override
                 public void onNext(final ChaincodeShim.ChaincodeMessage chaincodeMessage) {
-                    LOGGER.info("Mock peer => Got message: " + chaincodeMessage);
-                    ChaincodeMockPeerService.this.lastMessageRcvd = chaincodeMessage;
-                    if (ChaincodeMockPeerService.this.scenario.size() > 0) {
-                        final ScenarioStep step = ChaincodeMockPeerService.this.scenario.get(0);
-                        ChaincodeMockPeerService.this.scenario.remove(0);
-                        if (step.expected(chaincodeMessage)) {
-                            final List<ChaincodeShim.ChaincodeMessage> nextSteps = step.next();
-                            for (final ChaincodeShim.ChaincodeMessage m : nextSteps) {
-                                ChaincodeMockPeerService.this.lastMessageSend = m;
-                                LOGGER.info("Mock peer => Sending response message: " + m);
-                                responseObserver.onNext(m);
+                    // streams are registered concurrently, the scenario is shared
+                    synchronized (ChaincodeMockPeerService.this) {
+                        LOGGER.info("Mock peer => Got message: " + chaincodeMessage);
+                        ChaincodeMockPeerService.this.lastMessageRcvd = chaincodeMessage;
+                        if (ChaincodeMockPeerService.this.scenario.size() > 0) {
+                            final ScenarioStep step = ChaincodeMockPeerService.this.scenario.get(0);
+                            ChaincodeMockPeerService.this.scenario.remove(0);
+                            if (step.expected(chaincodeMessage)) {
+                                final List<ChaincodeShim.ChaincodeMessage> nextSteps = step.next();
+                                for (final ChaincodeShim.ChaincodeMessage m : nextSteps) {
+                                    ChaincodeMockPeerService.this.lastMessageSend = m;
+                                    LOGGER.info("Mock peer => Sending response message: " + m);
+                                    responseObserver.onNext(m);
+                                }
+                            } else {
+                                LOGGER.warning("Non expected message rcvd in step " + step.getClass().getSimpleName());
                             }
-                        } else {
-                            LOGGER.warning("Non expected message rcvd in step " + step.getClass().getSimpleName());
+                            ChaincodeMockPeerService.this.lastExecutedStepNumber++;
                         }
-                        ChaincodeMockPeerService.this.lastExecutedStepNumber++;
                     }
                 }
 
@@ -11,6 +11,7 @@ import java.util.List;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
 
 /**
  * Simulates getState Waits for GET_STATE message Returns response message with
@@ -19,19 +20,44 @@ import com.google.protobuf.ByteString;
 public final class GetValueStep implements ScenarioStep {
     private ChaincodeShim.ChaincodeMessage orgMsg;
     private final String val;
+    private final String collection;
+    private final String key;
 
     /**
      *
      * @param val value to return
      */
     public GetValueStep(final String val) {
+        this(null, null, val);
+    }
+
+    /**
+     *
+     * @param collection collection the request must be for
+     * @param key        key the request must be for
+     * @param val        value to return
+     */
+    public GetValueStep(final String collection, final String key, final String val) {
+        this.collection = collection;
+        this.key = key;
         this.val = val;
     }
 
     @Override
     public boolean expected(final ChaincodeShim.ChaincodeMessage msg) {
         orgMsg = msg;
-        return msg.getType() == ChaincodeShim.ChaincodeMessage.Type.GET_STATE;
+        if (msg.getType() != ChaincodeShim.ChaincodeMessage.Type.GET_STATE) {
+            return false;
+        }
+        if (key == null) {
+            return true;
+        }
+        try {
+            final ChaincodeShim.GetState getState = ChaincodeShim.GetState.parseFrom(msg.getPayload());
+            return collection.equals(getState.getCollection()) && key.equals(getState.getKey());
+        } catch (final InvalidProtocolBufferException e) {
+            return false;
+        }
     }
 
     @Override
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2020 IBM All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.shim.mock.peer;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim;
+
+/**
+ * Waits for a message of the given type, as a peer that has stopped
+ * responding, no response sent
+ */
+public final class NoResponseStep implements ScenarioStep {
+    private final ChaincodeShim.ChaincodeMessage.Type type;
+
+    /**
+     *
+     * @param type type of message expected
+     */
+    public NoResponseStep(final ChaincodeShim.ChaincodeMessage.Type type) {
+        this.type = type;
+    }
+
+    @Override
+    public boolean expected(final ChaincodeShim.ChaincodeMessage msg) {
+        return msg.getType() == type;
+    }
+
+    @Override
+    public List<ChaincodeShim.ChaincodeMessage> next() {
+        return Collections.emptyList();
+    }
+}